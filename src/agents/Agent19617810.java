@@ -1,36 +1,46 @@
 package agents;
 import loveletter.*;
-import java.util.Random;
-
-
-class AleatoricPolicy{
-
-  //recursive data structure for representing an aleatoric formula
-  //has static methods for mutation and crossover.
-  //has static methods for selection (tournament?)
-  //Types are properties (aleatoric)
-  //or ite combinations
-  //Properties are enumerations? wtf not. 
-
-}
-
-
-
-
 
 /**
- * An interface for representing an agent in the game Love Letter
- * All agent's must have a 0 parameter constructor
+ * An agent playing an AleatoricPolicy, by default the one evolved by Evolution.
+ * Every legal action a seat can take is built once, so choosing a move allocates nothing.
  * */
 public class Agent19617810 implements Agent{
 
-  private Random rand;
+  // Every action by seat, indexed by PseudoState.actionKey
+  private static final Action[][] ACTIONS = buildActions();
+
+  private final AleatoricPolicy policy;
   private State current;
   private int myIndex;
+  private final int[] unseen; // Cards by value that could be in an unknown opponent's hand
 
   //0 place default constructor
   public Agent19617810(){
-    rand  = new Random();
+    this(AleatoricPolicy.standard());
+  }
+
+  Agent19617810(AleatoricPolicy policy){
+    this.policy = policy;
+    unseen = new int[9];
+  }
+
+  private static Action[][] buildActions(){
+    Action[][] actions = new Action[Ruleset.MAX_PLAYERS][9 << 8];
+    for(int p = 0; p < Ruleset.MAX_PLAYERS; p++){
+      for(Card c : Card.values()){
+        for(int t = -1; t < Ruleset.MAX_PLAYERS; t++){
+          int guesses = c == Card.GUARD ? 8 : 0; // Only the Guard names a card
+          for(int g = c == Card.GUARD ? 1 : 0; g <= guesses; g++){
+            int key = PseudoState.actionKey(c.value(), t, g);
+            try {
+              actions[p][key] = PseudoState.keyToAction(key, p);
+            } catch(IllegalActionException e){/*not a legal combination*/}
+          }
+        }
+      }
+    }
+    return actions;
   }
 
   /**
@@ -46,15 +56,28 @@ public class Agent19617810 implements Agent{
   public void newRound(State start){
     current = start;
     myIndex = current.getPlayerIndex();
+    countUnseen();
   }
 
   /**
-   * Method called when any agent performs an action. 
+   * Method called when any agent performs an action.
    * @param act the action an agent performs
    * @param results the state of play the agent is able to observe.
    * **/
   public void see(Action act, State results){
     current = results;
+    countUnseen();
+  }
+
+  // Every card less those discarded, in my hand or in a hand I know
+  private void countUnseen(){
+    Ruleset rules = current.ruleset();
+    for(int v = 1; v <= 8; v++) unseen[v] = rules.count(v);
+    for(int p = 0; p < current.numPlayers(); p++){
+      for(int i = current.discardCount(p) - 1; i >= 0; i--) unseen[current.getDiscard(p, i).value()]--;
+      Card known = current.getCard(p);
+      if(known != null) unseen[known.value()]--;
+    }
   }
 
   /**
@@ -64,42 +87,49 @@ public class Agent19617810 implements Agent{
    * @throws IllegalActionException when the Action produced is not legal.
    * */
   public Action playCard(Card c){
-    Action act = null;
-    Card play;
-    while(!current.legalAction(act, c)){
-      if(rand.nextDouble()<0.5) play= c;
-      else play = current.getCard(myIndex);
-      int target = rand.nextInt(current.numPlayers());
-      try{
-        switch(play){
-          case GUARD:
-            act = Action.playGuard(myIndex, target, Card.values()[rand.nextInt(7)+1]);
-            break;
-          case PRIEST:
-            act = Action.playPriest(myIndex, target);
-            break;
-          case BARON:  
-            act = Action.playBaron(myIndex, target);
-            break;
-          case HANDMAID:
-            act = Action.playHandmaid(myIndex);
-            break;
-          case PRINCE:  
-            act = Action.playPrince(myIndex, target);
-            break;
-          case KING:
-            act = Action.playKing(myIndex, target);
-            break;
-          case COUNTESS:
-            act = Action.playCountess(myIndex);
-            break;
-          default:
-            act = null;//never play princess
-        }
-      }catch(IllegalActionException e){/*do nothing*/}
+    int held = current.getCard(myIndex).value();
+    int drawn = c.value();
+    int play = HandPairs.only(held, drawn);
+    if(play == 0){
+      float late = 1 - current.deckSize() / (float) current.ruleset().deckSize();
+      float known = 0;
+      for(int open = current.targetable(myIndex); open != 0 && known == 0; open &= open - 1)
+        if(current.getCard(Integer.numberOfTrailingZeros(open)) != null) known = 1;
+      play = policy.playScore(held, drawn, late, known) >= policy.playScore(drawn, held, late, known) ? held : drawn;
     }
+    int kept = play == held ? drawn : held;
+    unseen[drawn]--; // The drawn card is mine until the next count
+    Action act = ACTIONS[myIndex][key(play, kept)];
+    unseen[drawn]++;
     return act;
   }
+
+  // The action key for playing card while keeping kept, with the policy's target and guess
+  private int key(int card, int kept){
+    if(card == 4 || card == 7 || card == 8) return PseudoState.actionKey(card, -1, 0);
+    int target = -1;
+    float best = -Float.MAX_VALUE;
+    float toWin = current.ruleset().threshold(current.numPlayers());
+    for(int open = current.targetable(myIndex); open != 0; open &= open - 1){
+      int p = Integer.numberOfTrailingZeros(open);
+      Card hand = current.getCard(p);
+      float value = hand == null ? 0 : (card == 3 ? kept - hand.value() : hand.value()) / 8f;
+      float score = policy.targetScore(card, hand == null ? 0 : 1, value, current.score(p) / toWin);
+      if(score > best){
+        target = p;
+        best = score;
+      }
+    }
+    if(card == 5 && (target == -1 || policy.princeSelf() > best)) target = myIndex;
+    if(target == -1){
+      // Everyone else is protected, so any opponent still in the round may be named to no effect
+      target = Integer.numberOfTrailingZeros(current.remaining() & ~(1 << myIndex));
+    }
+    if(card != 1) return PseudoState.actionKey(card, target, 0);
+    Card hand = current.getCard(target);
+    int guess = hand != null && hand.value() != 1 ? hand.value() : policy.guess(unseen);
+    return PseudoState.actionKey(card, target, guess);
+  }
 }
 
 
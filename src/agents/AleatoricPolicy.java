@@ -0,0 +1,192 @@
+package agents;
+import loveletter.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An evolved policy, held as a compact genome of byte genes.
+ * Each gene is a weight of gene / 32 in one of a few linear scores:
+ * which of the two cards to play given the pair, how late the round is and whether a
+ * targetable hand is known; which opponent to target given what is known of them; and
+ * how strongly to favour each guess for the Guard beyond the number still unseen.
+ * Genomes are saved as a magic number, the number of genes and the genes. Default agents play
+ * the seed policy unless run with -Dloveletter.aleator=file.
+ */
+class AleatoricPolicy{
+  private static final int MAGIC = 0x4C4C414C; // "LLAL"
+  /** Where Evolution writes a policy by default */
+  static final String DEFAULT_FILE = "aleator.genome";
+  /** The system property naming the policy default Agent19617810s and GodV3s play, unset for the seed policy */
+  static final String PROPERTY = "loveletter.aleator";
+
+  // Gene layout
+  static final int PAIR = 0; // 64: preference for playing card a while keeping card b
+  static final int LATE = 64; // 8: preference for playing each card as the deck runs down
+  static final int KNOWN = 72; // 8: preference for playing each card while an opponent's hand is known
+  static final int TARGET = 80; // 3 per targeted card, see TARGETED: known, value, tokens
+  static final int PRINCE_SELF = 95; // preference for discarding one's own hand with the Prince
+  static final int GUESS = 96; // 7: preference for each Guard guess from the Priest up
+  static final int LENGTH = 103;
+  // Index of each card's target weights, or -1 for cards without a target
+  private static final int[] TARGETED = {-1, 0, 1, 2, -1, 3, 4, -1, -1};
+
+  private static AleatoricPolicy standard;
+
+  private final byte[] genes;
+  private final float[] weights; // genes / 32, decoded once
+
+  AleatoricPolicy(byte[] genes){
+    if(genes.length != LENGTH) throw new IllegalArgumentException("A genome has " + LENGTH + " genes");
+    this.genes = genes;
+    weights = new float[LENGTH];
+    for(int i = 0; i < LENGTH; i++) weights[i] = genes[i] / 32f;
+  }
+
+  /**
+   * A hand written starting point: play the lower card, use the Guard and Baron on known hands,
+   * and discard a known high hand with the Prince.
+   * @return the seed policy
+   */
+  static AleatoricPolicy seed(){
+    byte[] genes = new byte[LENGTH];
+    for(int a = 1; a <= 8; a++) for(int b = 1; b <= 8; b++) genes[PAIR + (a - 1) * 8 + b - 1] = (byte) ((b - a) * 8);
+    genes[TARGET + 3 * TARGETED[1]] = 96; // Guard a known hand
+    genes[TARGET + 3 * TARGETED[3] + 1] = 64; // Baron a known lower hand
+    genes[TARGET + 3 * TARGETED[5] + 1] = 64; // Prince a known high hand
+    genes[PRINCE_SELF] = -64;
+    return new AleatoricPolicy(genes);
+  }
+
+  /**
+   * @param rand the source of randomness
+   * @return a policy with every gene uniform
+   */
+  static AleatoricPolicy random(Random rand){
+    byte[] genes = new byte[LENGTH];
+    rand.nextBytes(genes);
+    return new AleatoricPolicy(genes);
+  }
+
+  /**
+   * The policy named by the PROPERTY system property, loaded once.
+   * @return the shared default policy, or the seed policy if the property is unset or the file cannot be read
+   */
+  static synchronized AleatoricPolicy standard(){
+    if(standard == null){
+      String path = System.getProperty(PROPERTY);
+      standard = seed();
+      if(path != null){
+        try {
+          standard = load(path);
+          if(Log.info()) Log.println("Loaded policy " + path);
+        } catch(IOException e){
+          if(Log.warn()) Log.println("Could not read policy: " + e);
+        }
+      }
+    }
+    return standard;
+  }
+
+  static AleatoricPolicy load(String path) throws IOException {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))){
+      if(in.readInt() != MAGIC) throw new IOException(path + " is not a policy");
+      if(in.readInt() != LENGTH) throw new IOException(path + " has a different gene layout");
+      byte[] genes = new byte[LENGTH];
+      in.readFully(genes);
+      return new AleatoricPolicy(genes);
+    }
+  }
+
+  void save(String path) throws IOException {
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))){
+      out.writeInt(MAGIC);
+      out.writeInt(LENGTH);
+      out.write(genes);
+    }
+  }
+
+  // Each gene is redrawn with probability rate, half the time uniformly and otherwise nudged
+  AleatoricPolicy mutate(double rate, Random rand){
+    byte[] child = genes.clone();
+    for(int i = 0; i < LENGTH; i++){
+      if(rand.nextDouble() >= rate) continue;
+      if(rand.nextBoolean()) child[i] = (byte) rand.nextInt(256);
+      else child[i] = (byte) Math.max(-128, Math.min(127, child[i] + (int) Math.round(rand.nextGaussian() * 16)));
+    }
+    return new AleatoricPolicy(child);
+  }
+
+  // Uniform crossover
+  AleatoricPolicy crossover(AleatoricPolicy other, Random rand){
+    byte[] child = new byte[LENGTH];
+    for(int i = 0; i < LENGTH; i++) child[i] = rand.nextBoolean() ? genes[i] : other.genes[i];
+    return new AleatoricPolicy(child);
+  }
+
+  // Tournament selection: the fittest of size policies drawn with replacement
+  static AleatoricPolicy select(AleatoricPolicy[] population, double[] fitness, int size, Random rand){
+    int best = rand.nextInt(population.length);
+    for(int i = 1; i < size; i++){
+      int next = rand.nextInt(population.length);
+      if(fitness[next] > fitness[best]) best = next;
+    }
+    return population[best];
+  }
+
+  /**
+   * @param card the card that would be played
+   * @param kept the card that would be kept
+   * @param late the share of the deck already drawn
+   * @param known 1 if some targetable opponent's hand is known, else 0
+   * @return how much the policy prefers this play
+   */
+  float playScore(int card, int kept, float late, float known){
+    return weights[PAIR + (card - 1) * 8 + kept - 1] + weights[LATE + card - 1] * late + weights[KNOWN + card - 1] * known;
+  }
+
+  /**
+   * @param card the card played, one that takes a target
+   * @param known 1 if the target's hand is known, else 0
+   * @param value a signed measure of the known hand, 0 if unknown
+   * @param tokens the target's share of the tokens needed to win
+   * @return how much the policy prefers this target
+   */
+  float targetScore(int card, float known, float value, float tokens){
+    int t = TARGET + 3 * TARGETED[card];
+    return weights[t] * known + weights[t + 1] * value + weights[t + 2] * tokens;
+  }
+
+  float princeSelf(){ return weights[PRINCE_SELF]; }
+
+  /**
+   * @param unseen how many of each card, by value, could be in the target's hand
+   * @return the card value to guess
+   */
+  int guess(int[] unseen){
+    int best = 2;
+    float bestScore = -Float.MAX_VALUE;
+    for(int v = 2; v <= 8; v++){
+      if(unseen[v] <= 0) continue;
+      float score = unseen[v] * (1 + weights[GUESS + v - 2] / 4);
+      if(score > bestScore){
+        best = v;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  public boolean equals(Object o){
+    return o instanceof AleatoricPolicy && Arrays.equals(genes, ((AleatoricPolicy) o).genes);
+  }
+
+  public int hashCode(){ return Arrays.hashCode(genes); }
+}
@@ -0,0 +1,129 @@
+package agents;
+import loveletter.*;
+
+import java.util.Arrays;
+
+class CardCount {
+  private double[][] cardProbabilities;
+  private int[] cardsUnseen;
+  private int[] playerNumbers;
+  public int[] knownCards;
+
+  public CardCount(int myIndex, int numPlayers, Ruleset rules){
+    cardsUnseen = new int[8];
+    reset(myIndex, numPlayers, rules);
+  }
+
+  // Start counting a new round, keeping the arrays if the table is the same size
+  public void reset(int myIndex, int numPlayers, Ruleset rules){
+    int opponents = numPlayers - 1;
+    if(playerNumbers == null || playerNumbers.length != opponents){
+      cardProbabilities = new double[opponents][8];
+      playerNumbers = new int[opponents];
+      knownCards = new int[opponents];
+    }
+    for(int i = 0; i < 8; i++) cardsUnseen[i] = rules.count(i + 1);
+    Arrays.fill(knownCards, 0);
+    int count = 0;
+    for(int i = 0; i < numPlayers; i++){
+      if(i != myIndex && count < opponents) {
+        playerNumbers[count] = i;
+        count++;
+      }
+    }
+  }
+
+  public void updateProbabilities(){
+    int totalUnseenCards = 0;
+    for(int cardType : cardsUnseen){
+      totalUnseenCards += cardType;
+    }
+    for(int i = 0; i < playerNumbers.length; i++){
+      for(int j = 0; j < 8; j++){
+        if(playerNumbers[i] == -1) cardProbabilities[i][j] = 0;
+
+        else cardProbabilities[i][j] = (double) cardsUnseen[j]/(double) totalUnseenCards;
+      }
+    }
+    for(int i = 0; i < playerNumbers.length; i++){
+      int known = knownCards[i];
+      if(known > 0){
+        for(int j = 0; j < 8; j++){
+          cardProbabilities[i][j] = 0;
+        }
+        cardProbabilities[i][known - 1] = 1;
+      }
+    }
+  }
+
+  public void updateOwn(int card){
+    cardsUnseen[card - 1]--;
+  }
+
+  public void updateKnown(int card, int player){
+    int playerIndex = getPlayerIndex(player);
+    knownCards[playerIndex] = card;
+    cardsUnseen[card - 1]--;
+  }
+
+  public Boolean cardKnown(int player){
+    int playerIndex = getPlayerIndex(player);
+    if(Log.debug()) Log.println(Arrays.toString(knownCards));
+    if(playerIndex == -1) return false;
+    return knownCards[playerIndex] != 0;
+  }
+
+  public void discardKnown(int player){
+    int playerIndex = getPlayerIndex(player);
+    if(playerIndex != -1) knownCards[playerIndex] = 0;
+  }
+
+  public void updateUnseen(Card[] unseen){
+    for(int i = 0; i < 8; i++) cardsUnseen[i] = 0;
+    for(Card card : unseen){
+      cardsUnseen[card.value() - 1]++;
+    }
+  }
+
+  public void playerEliminated(int player){
+    int playerIndex = getPlayerIndex(player);
+    if(playerIndex != -1){
+      knownCards[playerIndex] = 0;
+      playerNumbers[playerIndex] = -1;
+      for(int i = 0; i < 8; i++){
+        cardProbabilities[playerIndex][i] = 0;
+      }
+    }
+  }
+
+  private int getPlayerIndex(int playerNum){
+    for(int i = 0; i < playerNumbers.length; i++){
+      if(playerNum == playerNumbers[i]) return i;
+    }
+    return -1;
+  }
+
+  // The mean value of the player's hand, or 0 if they are out
+  public double expectedValue(int player){
+    int playerIndex = getPlayerIndex(player);
+    if(playerIndex == -1) return 0;
+    double mean = 0;
+    for(int j = 0; j < 8; j++) mean += cardProbabilities[playerIndex][j] * (j + 1);
+    return mean;
+  }
+
+  // The value of the likeliest card, other than the Guard, in the player's hand; ties go to the higher card, since hands skew high
+  public int likeliest(int player){
+    int playerIndex = getPlayerIndex(player);
+    int best = 1;
+    if(playerIndex == -1) return best + 1;
+    for(int j = 2; j < 8; j++) if(cardProbabilities[playerIndex][j] >= cardProbabilities[playerIndex][best]) best = j;
+    return best + 1;
+  }
+
+  public double likeliestProbability(int player){
+    int playerIndex = getPlayerIndex(player);
+    if(playerIndex == -1) return 0;
+    return cardProbabilities[playerIndex][likeliest(player) - 1];
+  }
+}
@@ -0,0 +1,173 @@
+package agents;
+import loveletter.*;
+
+/**
+ * Perfect information Monte Carlo (PIMC) search for the end of a round, once two players are
+ * left and only a few cards remain. Every ordering of the cards the searching player has not
+ * seen is a possible deal, and all of them are equally likely, so rather than sampling it
+ * enumerates them and scores each root action by the number of deals it wins.
+ * Each deal is solved by minimax with every hand showing, with one exception: a player
+ * guessing with the Guard names the card they know the target holds, or else the card they
+ * have seen the fewest copies of. Without that, every Guard would guess right.
+ * This is not an exact solution of the hidden information game. Players below the root play
+ * as though they could see the deal, so a line that only works when the cards are known can
+ * score better than it should. GodV2 only hands it the endgame when asked to, see GodV2's constructors.
+ * Positions reached by several deals or move orders are solved once and remembered, under two
+ * independent hashes so that a collision on one is not taken for the same position.
+ */
+class EndgamePimc {
+  /** A deck size, including the card that is never drawn, at which the search is fast enough to take over from MCTS */
+  static final int DEFAULT_DECK = 6;
+
+  private State startState;
+  private Card drawn;
+  private int playerIndex;
+  private PseudoAgent[] agents; // Only named in action descriptions, never asked to play
+  private PseudoCard[] unseen; // The deal being solved
+  private int[] counts; // Unseen cards by value - 1, while deals are enumerated
+  private int[][] moves; // Legal action keys, one buffer per ply
+  private int[] belief; // Scratch counts for Guard guesses
+  private long[] memoKeys; // Positions already solved, open addressing with 0 for empty
+  private long[] memoChecks; // Second hash of each position, which must also match
+  private byte[] memoValues; // 1 if the searching player wins the position, 0 if not
+  private int memoSize;
+  private int[] rootKeys; // Legal actions at the root
+  private int[] rootWins; // Deals won by each root action
+  private int rootCount;
+  private int deals;
+
+  // Whether the search can take over this decision
+  static boolean applies(State state, int maxDeck){
+    if(state.deckSize() > maxDeck) return false;
+    return Integer.bitCount(state.remaining()) == 2;
+  }
+
+  public EndgamePimc(State startState, Card drawn, int playerIndex){
+    this.startState = startState;
+    this.drawn = drawn;
+    this.playerIndex = playerIndex;
+    int numPlayers = startState.numPlayers();
+    agents = new PseudoAgent[numPlayers];
+    for(int i = 0; i < numPlayers; i++){
+      agents[i] = new PseudoAgent();
+      agents[i].reset(startState.ruleset());
+    }
+    counts = new int[8];
+    moves = new int[startState.deckSize() + numPlayers][PseudoState.MAX_ACTIONS]; // Every ply draws a card
+    belief = new int[8];
+    memoKeys = new long[1 << 12];
+    memoChecks = new long[1 << 12];
+    memoValues = new byte[1 << 12];
+  }
+
+  // Finds the action that wins the most deals
+  public Action search() throws IllegalActionException {
+    // The unseen cards are those not discarded, drawn or in a hand the searching player knows
+    PseudoState view = new PseudoState(new java.util.Random(0), startState, agents, drawn);
+    view.unseenBy(playerIndex, view.nextDraw(), counts);
+    int total = 0;
+    for(int c : counts){
+      if(c < 0) throw new IllegalActionException("Inconsistent card counts");
+      total += c;
+    }
+    unseen = new PseudoCard[total];
+
+    rootKeys = new int[PseudoState.MAX_ACTIONS];
+    rootCount = view.legalActions(view.nextDraw(), rootKeys);
+    if(rootCount == 0) throw new IllegalActionException("No legal actions at the root");
+    rootWins = new int[rootCount];
+
+    deal(0);
+
+    int best = 0;
+    for(int i = 1; i < rootCount; i++) if(rootWins[i] > rootWins[best]) best = i;
+    if(Log.debug()) Log.println("Endgame: " + deals + " deals, best wins " + rootWins[best] + ", " + memoSize + " positions");
+    return PseudoState.keyToAction(rootKeys[best], playerIndex);
+  }
+
+  // Places every remaining unseen card at position i in turn, solving each complete deal
+  private void deal(int i) throws IllegalActionException {
+    if(i == unseen.length){
+      deals++;
+      PseudoState state = new PseudoState(startState, agents, drawn, unseen);
+      for(int a = 0; a < rootCount; a++){
+        PseudoState next = state.expandTurn(PseudoState.keyToAction(rootKeys[a], playerIndex));
+        rootWins[a] += value(next, 1);
+      }
+      return;
+    }
+    for(int c = 0; c < 8; c++){
+      if(counts[c] == 0) continue;
+      counts[c]--;
+      unseen[i] = PseudoCard.values()[c];
+      deal(i + 1);
+      counts[c]++;
+    }
+  }
+
+  // 1 if the searching player wins the position with best play from both sides, 0 otherwise
+  private int value(PseudoState state, int ply) throws IllegalActionException {
+    if(state.roundOver()) return state.roundWinner() == playerIndex ? 1 : 0;
+    long key = state.positionKey();
+    if(key == 0) key = 1; // 0 marks an empty slot
+    long check = state.positionCheck();
+    int slot = find(key, check);
+    if(memoKeys[slot] == key) return memoValues[slot];
+
+    int p = state.nextPlayer();
+    PseudoCard card = state.nextDraw();
+    int[] keys = moves[ply];
+    int count = state.legalActions(card, keys);
+    if(count == 0) throw new IllegalActionException("No legal actions for player " + p);
+    boolean maximise = p == playerIndex;
+    int best = maximise ? 0 : 1;
+    for(int i = 0; i < count && best == (maximise ? 0 : 1); i++){
+      int target = ((keys[i] >> 4) & 0xF) - 1;
+      if(PseudoState.keyCard(keys[i]) == PseudoCard.GUARD.value() && !state.knows(p, target)
+        && (keys[i] & 0xF) != likeliestGuess(state, p, card)) continue;
+      int v = value(state.expandTurn(PseudoState.keyToAction(keys[i], p)), ply + 1);
+      best = maximise ? Math.max(best, v) : Math.min(best, v);
+    }
+    store(key, check, best);
+    return best;
+  }
+
+  // The card, other than the Guard, that the player has seen the fewest copies of
+  private int likeliestGuess(PseudoState state, int player, PseudoCard card){
+    state.unseenBy(player, card, belief);
+    int guess = 2;
+    for(int v = 3; v <= 8; v++) if(belief[v - 1] > belief[guess - 1]) guess = v;
+    return guess;
+  }
+
+  // The slot holding the position with both hashes, or the empty slot where it would go
+  private int find(long key, long check){
+    int mask = memoKeys.length - 1;
+    int slot = (int) key & mask;
+    while(memoKeys[slot] != 0 && (memoKeys[slot] != key || memoChecks[slot] != check)) slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  private void store(long key, long check, int value){
+    if(2 * (memoSize + 1) > memoKeys.length){
+      long[] oldKeys = memoKeys;
+      long[] oldChecks = memoChecks;
+      byte[] oldValues = memoValues;
+      memoKeys = new long[oldKeys.length * 2];
+      memoChecks = new long[oldKeys.length * 2];
+      memoValues = new byte[oldKeys.length * 2];
+      for(int i = 0; i < oldKeys.length; i++){
+        if(oldKeys[i] == 0) continue;
+        int slot = find(oldKeys[i], oldChecks[i]);
+        memoKeys[slot] = oldKeys[i];
+        memoChecks[slot] = oldChecks[i];
+        memoValues[slot] = oldValues[i];
+      }
+    }
+    int slot = find(key, check);
+    if(memoKeys[slot] == 0) memoSize++;
+    memoKeys[slot] = key;
+    memoChecks[slot] = check;
+    memoValues[slot] = (byte) value;
+  }
+}
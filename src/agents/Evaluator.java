@@ -0,0 +1,269 @@
+package agents;
+import loveletter.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A logistic model of a player's chance of winning the round from a determinised state.
+ * It reads a handful of features, such as the player's hand against the best opposing hand,
+ * discard totals, protection and who knows whose card, so that a search can score a node
+ * at its depth limit in a few dozen multiplications instead of playing the round out.
+ * Train a model with
+ * <pre>java agents.Evaluator [file] [rounds] [players]</pre>
+ * which plays rounds of random self-play and fits the weights by stochastic gradient descent,
+ * and give it to default GodV2s by running with -Dloveletter.evaluator=file.
+ * It learns from these rounds rather than from SelfPlay's records on purpose: the model stands
+ * in for a rollout, which GodV2 plays out with random PseudoAgents from a determinised state, so
+ * its target is the random playout's result from a state with every hand known. SelfPlay's
+ * records hold only what the acting player could see, and the outcomes of stronger agents' play.
+ * A model is saved as a magic number, the number of features and the weights.
+ */
+public class Evaluator {
+  private static final int MAGIC = 0x4C4C4556; // "LLEV"
+  /** The number of features, including the bias */
+  public static final int FEATURES = 16;
+  /** Where main writes a model by default */
+  public static final String DEFAULT_FILE = "evaluator.weights";
+  /** The system property naming the model default GodV2s use, unset for none */
+  public static final String PROPERTY = "loveletter.evaluator";
+
+  private static Evaluator standard;
+  private static boolean standardLoaded;
+
+  private final double[] weights;
+
+  // Construct a model with every weight zero, which gives every player an even chance
+  public Evaluator(){
+    weights = new double[FEATURES];
+  }
+
+  /**
+   * The model named by the PROPERTY system property, loaded once.
+   * @return the shared default model, or null if the property is unset or the file cannot be read
+   */
+  public static synchronized Evaluator standard(){
+    if(!standardLoaded){
+      standardLoaded = true;
+      String path = System.getProperty(PROPERTY);
+      if(path != null){
+        try {
+          standard = load(path);
+          if(Log.info()) Log.println("Loaded evaluator " + path);
+        } catch(IOException e){
+          if(Log.warn()) Log.println("Could not read evaluator: " + e);
+        }
+      }
+    }
+    return standard;
+  }
+
+  /**
+   * @param path the file to read
+   * @return the model saved there
+   * @throws IOException if the file cannot be read or is not a model with the current features
+   */
+  public static Evaluator load(String path) throws IOException {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))){
+      if(in.readInt() != MAGIC) throw new IOException(path + " is not an evaluator");
+      if(in.readInt() != FEATURES) throw new IOException(path + " was trained on different features");
+      Evaluator model = new Evaluator();
+      for(int i = 0; i < FEATURES; i++) model.weights[i] = in.readDouble();
+      return model;
+    }
+  }
+
+  /**
+   * @param path the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void save(String path) throws IOException {
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))){
+      out.writeInt(MAGIC);
+      out.writeInt(FEATURES);
+      for(double w : weights) out.writeDouble(w);
+    }
+  }
+
+  // Fills x with the features of state for player, who must not be eliminated
+  static void features(PseudoState state, int player, double[] x){
+    int numPlayers = state.numPlayers();
+    int hand = state.getCard(player).value();
+    int alive = 0, bestOther = 0, otherSum = 0, knownByMe = 0, knowMine = 0, beaten = 0, bestDiscard = 0;
+    for(int q = 0; q < numPlayers; q++){
+      if(q == player || state.eliminated(q)) continue;
+      int other = state.getCard(q).value();
+      alive++;
+      bestOther = Math.max(bestOther, other);
+      otherSum += other;
+      if(other > hand) beaten++;
+      if(state.knows(player, q)) knownByMe++;
+      if(state.knows(q, player)) knowMine++;
+      bestDiscard = Math.max(bestDiscard, state.discardValue(q));
+    }
+    // Scale by the ruleset's deck, so the classic deck gives the features the weights were fitted to
+    Ruleset rules = state.ruleset();
+    double cards = rules.deckSize();
+    double valueTotal = 0;
+    for(int v = 1; v <= 8; v++) valueTotal += v * rules.count(v);
+    double late = 1 - state.deckSize() / cards;
+    x[0] = 1;
+    x[1] = hand / 8.0;
+    x[2] = bestOther / 8.0;
+    x[3] = alive == 0 ? 0 : otherSum / (8.0 * alive);
+    x[4] = 1.0 / (alive + 1);
+    x[5] = state.handmaid(player) ? 1 : 0;
+    x[6] = state.discardValue(player) / valueTotal;
+    x[7] = bestDiscard / valueTotal;
+    x[8] = alive == 0 ? 0 : (double) knownByMe / alive;
+    x[9] = alive == 0 ? 0 : (double) knowMine / alive;
+    x[10] = state.deckSize() / cards;
+    x[11] = beaten == 0 ? 1 : 0;
+    x[12] = hand == 8 ? 1 : 0;
+    x[13] = (hand - bestOther) / 8.0 * late;
+    x[14] = state.nextPlayer() == player ? 1 : 0;
+    x[15] = hand == 1 ? 1 : 0;
+  }
+
+  // The linear score behind the probability
+  private double logit(double[] x){
+    double z = 0;
+    for(int i = 0; i < FEATURES; i++) z += weights[i] * x[i];
+    return z;
+  }
+
+  private static double sigmoid(double z){ return 1 / (1 + Math.exp(-z)); }
+
+  /**
+   * @param state a determinised state
+   * @param player the player to score
+   * @param x scratch space of FEATURES doubles
+   * @return the estimated probability that player wins the round
+   */
+  double winProbability(PseudoState state, int player, double[] x){
+    if(state.roundOver()) return state.roundWinner() == player ? 1 : 0;
+    if(state.eliminated(player)) return 0;
+    features(state, player, x);
+    return sigmoid(logit(x));
+  }
+
+  // One step of stochastic gradient descent on the log loss, with a little L2 regularisation
+  void learn(double[] x, int won, double rate){
+    double error = won - sigmoid(logit(x));
+    for(int i = 0; i < FEATURES; i++) weights[i] += rate * (error * x[i] - 1e-5 * weights[i]);
+  }
+
+  /**
+   * Fits a model by random self-play and saves it.
+   * Every state reached in a round is a training example for each player still in it,
+   * labelled with whether that player went on to win.
+   * @param args the file to write, the number of rounds to train on and the number of players
+   * @throws Exception if the model cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    String path = args.length > 0 ? args[0] : DEFAULT_FILE;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+    int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+    Random rand = new Random(0);
+    Evaluator model = new Evaluator();
+    RoundRecorder recorder = new RoundRecorder(rand, numPlayers);
+    double[] x = new double[FEATURES];
+    for(int r = 0; r < rounds; r++){
+      double rate = 0.05 / (1 + r / 20000.0);
+      int n = recorder.play();
+      for(int i = 0; i < n; i++){
+        PseudoState s = recorder.state(i);
+        for(int p = 0; p < s.numPlayers(); p++){
+          if(s.eliminated(p)) continue;
+          features(s, p, x);
+          model.learn(x, recorder.winner() == p ? 1 : 0, rate);
+        }
+      }
+    }
+    // Held out log loss and accuracy, against a model that knows nothing
+    double loss = 0, baseline = 0;
+    int right = 0, examples = 0;
+    for(int r = 0; r < 2000; r++){
+      int n = recorder.play();
+      for(int i = 0; i < n; i++){
+        PseudoState s = recorder.state(i);
+        int alive = 0;
+        for(int p = 0; p < s.numPlayers(); p++) if(!s.eliminated(p)) alive++;
+        for(int p = 0; p < s.numPlayers(); p++){
+          if(s.eliminated(p)) continue;
+          double prob = model.winProbability(s, p, x);
+          boolean won = recorder.winner() == p;
+          loss -= Math.log(Math.max(1e-9, won ? prob : 1 - prob));
+          baseline -= Math.log(won ? 1.0 / alive : 1 - 1.0 / alive);
+          if((prob >= 0.5) == won) right++;
+          examples++;
+        }
+      }
+    }
+    System.out.printf("log loss %.4f (uninformed %.4f), accuracy %.3f over %d examples%n",
+      loss / examples, baseline / examples, (double) right / examples, examples);
+    model.save(path);
+  }
+}
+
+/**
+ * Plays rounds between random policies on PseudoState, keeping every state reached.
+ */
+class RoundRecorder {
+  private Random rand;
+  private Agent[] dealers; // Only used to deal the starting State
+  private PseudoAgent[] agents;
+  private PseudoState[] states;
+  private int[] keys;
+  private int winner;
+
+  public RoundRecorder(Random rand, int numPlayers){
+    this.rand = rand;
+    dealers = new Agent[numPlayers];
+    agents = new PseudoAgent[numPlayers];
+    for(int p = 0; p < numPlayers; p++){
+      dealers[p] = new RandomAgent();
+      agents[p] = new PseudoAgent();
+    }
+    states = new PseudoState[32];
+    keys = new int[PseudoState.MAX_ACTIONS];
+  }
+
+  // Plays a round and returns the number of states recorded, from the deal to the last before the end
+  public int play() throws IllegalActionException {
+    State deal = new State(rand, dealers);
+    Card drawn = deal.drawCard();
+    PseudoState s = new PseudoState(rand, deal.playerState(deal.nextPlayer()), agents, drawn);
+    int n = 0;
+    while(!s.roundOver()){
+      states[n++] = s;
+      s = s.expandTurn(PseudoState.keyToAction(randomAction(s), s.nextPlayer()));
+    }
+    winner = s.roundWinner();
+    return n;
+  }
+
+  // As the rollout policy does: either card with even odds, never the Princess by choice, then any target and guess
+  private int randomAction(PseudoState s){
+    int count = s.legalActions(s.nextDraw(), keys);
+    int first = keys[0] >> 8;
+    int last = keys[count - 1] >> 8;
+    int card = first;
+    if(first != last && (first == 8 || (last != 8 && rand.nextBoolean()))) card = last;
+    int from = 0;
+    while(keys[from] >> 8 != card) from++;
+    int to = from;
+    while(to < count && keys[to] >> 8 == card) to++;
+    return keys[from + rand.nextInt(to - from)];
+  }
+
+  public PseudoState state(int i){ return states[i]; }
+
+  public int winner(){ return winner; }
+}
@@ -0,0 +1,145 @@
+package agents;
+import loveletter.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evolves an AleatoricPolicy with a genetic algorithm.
+ * A policy's fitness is the share of round tokens it wins at seat 0 against three random agents,
+ * over a fixed set of seeded games, so it is the same every time it is measured. Games are played
+ * in batches spread over a thread pool, and the fitness of every genome met is remembered, so
+ * elites and children identical to an earlier genome are never played again.
+ * Each generation keeps its fittest policies and fills the rest with children of tournament
+ * winners, by uniform crossover and mutation. Run with
+ * <pre>java agents.Evolution [file] [population] [generations] [games] [threads]</pre>
+ * which saves the fittest policy, for Agent19617810 and GodV3 to play.
+ */
+public class Evolution {
+  private static final int ELITES = 2;
+  private static final int TOURNAMENT = 3;
+  private static final int BATCH = 25; // Games per task
+
+  private final ExecutorService pool;
+  private final int games;
+  private final Map<AleatoricPolicy, Double> fitnessCache = new ConcurrentHashMap<AleatoricPolicy, Double>();
+  private int played; // Genomes whose games were played, rather than read from the cache
+
+  public Evolution(int games, int threads){
+    this.games = games;
+    pool = Executors.newFixedThreadPool(threads);
+  }
+
+  /**
+   * Runs the genetic algorithm.
+   * @param size the population size
+   * @param generations how many generations to breed
+   * @param rand the source of randomness for breeding
+   * @return the fittest policy found
+   * @throws Exception if a game cannot be played
+   */
+  public AleatoricPolicy evolve(int size, int generations, Random rand) throws Exception {
+    try {
+      AleatoricPolicy[] population = new AleatoricPolicy[size];
+      population[0] = AleatoricPolicy.seed();
+      for(int i = 1; i < size; i++) population[i] = i < size / 2 ? population[0].mutate(0.2, rand) : AleatoricPolicy.random(rand);
+      double[] fitness = evaluate(population);
+      for(int gen = 1; gen <= generations; gen++){
+        sort(population, fitness);
+        if(Log.info()) Log.println(String.format("Generation %d: best %.4f, median %.4f, %d genomes played", gen, fitness[0], fitness[size / 2], played));
+        AleatoricPolicy[] next = new AleatoricPolicy[size];
+        for(int i = 0; i < size; i++){
+          if(i < ELITES) next[i] = population[i];
+          else {
+            AleatoricPolicy a = AleatoricPolicy.select(population, fitness, TOURNAMENT, rand);
+            AleatoricPolicy b = AleatoricPolicy.select(population, fitness, TOURNAMENT, rand);
+            next[i] = a.crossover(b, rand).mutate(1.5 / AleatoricPolicy.LENGTH, rand);
+          }
+        }
+        population = next;
+        fitness = evaluate(population);
+      }
+      sort(population, fitness);
+      return population[0];
+    } finally {
+      pool.shutdownNow(); // Nothing is queued after a full run; after a failure, the remaining batches are dropped
+    }
+  }
+
+  // The fitness of each policy, playing only those not seen before
+  private double[] evaluate(AleatoricPolicy[] population) throws Exception {
+    List<AleatoricPolicy> fresh = new ArrayList<AleatoricPolicy>();
+    for(AleatoricPolicy policy : population)
+      if(!fitnessCache.containsKey(policy) && !fresh.contains(policy)) fresh.add(policy);
+    long[][] tokens = new long[fresh.size()][2]; // Tokens won by the policy and by anyone, per batch summed below
+    List<Future<long[]>> batches = new ArrayList<Future<long[]>>();
+    for(AleatoricPolicy policy : fresh)
+      for(int from = 0; from < games; from += BATCH){
+        int start = from, end = Math.min(games, from + BATCH);
+        batches.add(pool.submit(() -> play(policy, start, end)));
+      }
+    int b = 0;
+    for(int i = 0; i < fresh.size(); i++){
+      for(int from = 0; from < games; from += BATCH){
+        long[] result = batches.get(b++).get();
+        tokens[i][0] += result[0];
+        tokens[i][1] += result[1];
+      }
+      fitnessCache.put(fresh.get(i), tokens[i][1] == 0 ? 0 : (double) tokens[i][0] / tokens[i][1]);
+    }
+    played += fresh.size();
+    double[] fitness = new double[population.length];
+    for(int i = 0; i < population.length; i++) fitness[i] = fitnessCache.get(population[i]);
+    return fitness;
+  }
+
+  // Plays games from start to end with the policy at seat 0, returning its tokens and all tokens won
+  private long[] play(AleatoricPolicy policy, int start, int end){
+    long[] tokens = new long[2];
+    for(int g = start; g < end; g++){
+      Agent[] agents = {new Agent19617810(policy), new RandomAgent(3L * g + 1), new RandomAgent(3L * g + 2), new RandomAgent(3L * g + 3)};
+      int[] scores = new LoveLetter(g, null).playGame(agents);
+      if(scores == null) continue;
+      tokens[0] += scores[0];
+      for(int score : scores) tokens[1] += score;
+    }
+    return tokens;
+  }
+
+  // Sorts the population by decreasing fitness
+  private static void sort(AleatoricPolicy[] population, double[] fitness){
+    Integer[] order = new Integer[population.length];
+    for(int i = 0; i < order.length; i++) order[i] = i;
+    java.util.Arrays.sort(order, (x, y) -> Double.compare(fitness[y], fitness[x]));
+    AleatoricPolicy[] p = population.clone();
+    double[] f = fitness.clone();
+    for(int i = 0; i < order.length; i++){
+      population[i] = p[order[i]];
+      fitness[i] = f[order[i]];
+    }
+  }
+
+  /**
+   * Evolves a policy and saves it.
+   * @param args the file to write, the population size, generations, games per evaluation and threads
+   * @throws Exception if a game cannot be played or the policy cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    String path = args.length > 0 ? args[0] : AleatoricPolicy.DEFAULT_FILE;
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+    int generations = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+    int games = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+    int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    Log.setLevel(Log.Level.INFO); // Games are played without transcripts, so this lets through the generation reports and warnings
+    Evolution ga = new Evolution(games, threads);
+    AleatoricPolicy best = ga.evolve(size, generations, new Random(0));
+    System.out.printf("Best fitness %.4f, seed policy %.4f%n", ga.fitnessCache.get(best), ga.fitnessCache.get(AleatoricPolicy.seed()));
+    best.save(path);
+  }
+}
@@ -1,9 +1,12 @@
 package agents;
 import loveletter.*;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.lang.Math;
 
 /**
@@ -14,17 +17,106 @@ import java.lang.Math;
 public class GodV2 implements Agent{
   private State current;
   private int myIndex;
+  private boolean multiObserver; // Search with MOISMCTS rather than the single tree MCTS
+  private int threads; // Threads searching the shared MCTS tree
+  private OpeningBook book; // First moves of the round, answered without searching
+  private int endgameDeck; // Deck size at or below which two player endings are searched by PIMC, 0 for never
+  private boolean fullExpansion; // Branch the single tree search over every (card, target, guess), off until it beats two-card selection
+  private Evaluator evaluator; // Replaces rollouts in the search if a trained model is available
+  private int maxDepth = 4; // Search constants, see Tuner for choosing them
+  private int maxIterations = 1000000;
+  private double expConst = 0.3;
+  private double evalMix = 0.0; // Fraction of rollouts the evaluator replaces, off until a model has been validated against rollouts
+  private Random rand = new Random(); // Deals the search's determinizations
+  private PseudoAgent[] dealAgents; // Agents of the root determinization, kept for the game
+  private PseudoAgent[] searchAgents; // Rollout agents of the calling thread's search, kept for the game
+  private TranspositionTable table; // Cleared before every search rather than reallocated
+  private RandomAgent fallback = new RandomAgent(); // Plays if the search fails
 
   public GodV2(){
-    System.out.println("Initialising GodV2");
+    this(false);
+  }
+
+  // Construct the agent, choosing whether to use multi-observer ISMCTS
+  public GodV2(boolean multiObserver){
+    this(multiObserver, 1);
+  }
+
+  // Construct the agent, choosing the search and how many threads the single tree search may use.
+  // It plays from the opening book named by the loveletter.book system property, if any
+  public GodV2(boolean multiObserver, int threads){
+    this(multiObserver, threads, OpeningBook.standard());
+  }
+
+  // Construct the agent with an opening book, or null to search every move
+  public GodV2(boolean multiObserver, int threads, OpeningBook book){
+    this(multiObserver, threads, book, 0);
+  }
+
+  // Construct the agent, also choosing the deck size at which the PIMC endgame search takes over from MCTS,
+  // 0 for never or EndgamePimc.DEFAULT_DECK. It searches every deal as if all hands were showing, so it is biased
+  public GodV2(boolean multiObserver, int threads, OpeningBook book, int endgameDeck){
+    this.multiObserver = multiObserver;
+    this.threads = Math.max(1, threads);
+    this.book = book;
+    this.endgameDeck = endgameDeck;
+    evaluator = Evaluator.standard(); // Named by the loveletter.evaluator system property, if at all
+    if(Log.debug()) Log.println("Initialising GodV2");
+  }
+
+  // Construct the agent with its own search constants and no opening book or endgame search,
+  // so that every decision is made by the search those constants tune
+  public GodV2(int maxDepth, int maxIterations, double expConst, double evalMix){
+    this(false, 1, null, 0);
+    this.maxDepth = maxDepth;
+    this.maxIterations = maxIterations;
+    this.expConst = expConst;
+    this.evalMix = evalMix;
+  }
+
+  // Choose whether the single tree search branches over every legal (card, target, guess) action
+  // rather than one heuristic action per card
+  public void useFullExpansion(boolean fullExpansion){
+    this.fullExpansion = fullExpansion;
   }
 
   public String toString(){return "∆GodV2∆";}
 
+  // Build the search structures kept for the whole game, sized to the table
+  public void newGame(State start){
+    int numPlayers = start.numPlayers();
+    if(dealAgents == null || dealAgents.length != numPlayers){
+      dealAgents = new PseudoAgent[numPlayers];
+      searchAgents = new PseudoAgent[numPlayers];
+      for(int i = 0; i < numPlayers; i++){
+        dealAgents[i] = new PseudoAgent(rand);
+        searchAgents[i] = new PseudoAgent();
+      }
+    }
+    if(table == null) table = new TranspositionTable(16);
+  }
+
   public void newRound(State start){
     current = start;
     myIndex = current.getPlayerIndex();
-    if(myIndex != 0) System.out.println("Please put ∆GodV2∆ at position 0 please please please");
+    if(dealAgents == null || dealAgents.length != current.numPlayers()) newGame(start);
+    resetAgents();
+  }
+
+  // Clear what the pooled agents deduced in the last deal or search, so each root starts from the deck's counts
+  private void resetAgents(){
+    Ruleset rules = current.ruleset();
+    for(int i = 0; i < dealAgents.length; i++){
+      dealAgents[i].reset(rules);
+      searchAgents[i].reset(rules);
+    }
+  }
+
+  // The pooled agents, for checking that no belief is carried between rounds
+  PseudoAgent[] pooledAgents(){
+    PseudoAgent[] all = Arrays.copyOf(dealAgents, dealAgents.length * 2);
+    System.arraycopy(searchAgents, 0, all, dealAgents.length, searchAgents.length);
+    return all;
   }
 
   public void see(Action act, State results){
@@ -33,60 +125,85 @@ public class GodV2 implements Agent{
 
   public Action playCard(Card c){
     Action act;
-    // System.out.println("Hand is " + c + " and " + current.getCard(myIndex));
-    if(c == Card.COUNTESS && (current.getCard(myIndex) == Card.KING || current.getCard(myIndex) == Card.PRINCE)){
-      try {
-        act = Action.playCountess(myIndex);
-        return act;
-      } catch (IllegalActionException e){
-        System.out.println(e);
-      }
-    } else if(current.getCard(myIndex) == Card.COUNTESS  && (c == Card.KING || c == Card.PRINCE)){
-      try {
-        act = Action.playCountess(myIndex);
-        return act;
-      } catch (IllegalActionException e){
-        System.out.println(e);
-      }
-    } else {
-      MCTS monte;
-      try {
-        monte = new MCTS(4, 1000000, 0.3, current, c, myIndex);
-        MCTSNode bestNode = monte.ISMCTS();
+    // A Countess or Handmaid that is the only card worth playing needs no search
+    int only = HandPairs.only(current.getCard(myIndex).value(), c.value());
+    try {
+      if(only == Card.COUNTESS.value()) return Action.playCountess(myIndex);
+      if(only == Card.HANDMAID.value()) return Action.playHandmaid(myIndex);
+    } catch(IllegalActionException e){
+      if(Log.warn()) Log.println(e);
+    }
+    act = book == null ? null : book.lookup(current, c);
+    if(act != null) return act;
+    try {
+      if(EndgamePimc.applies(current, endgameDeck)){
+        act = new EndgamePimc(current, c, myIndex).search();
+      } else if(multiObserver){
+        act = new MOISMCTS(maxDepth, maxIterations, expConst, current, c, myIndex).search();
+      } else {
+        table.clear();
+        resetAgents();
+        PseudoState root = new PseudoState(rand, current, dealAgents, c);
+        MCTS monte = new MCTS(maxDepth, maxIterations, expConst, root, myIndex, fullExpansion, SelectionPolicy.ISUCT, table);
+        monte.useAgents(searchAgents);
+        if(evaluator != null && evalMix > 0) monte.useEvaluator(evaluator, evalMix);
+        MCTSNode bestNode = monte.ISMCTS(threads);
         act = bestNode.getAction();
-      } catch(IllegalActionException e){
-        System.out.println("Move failed " + e);
-        RandomAgent randSub = new RandomAgent();
-        randSub.newRound(current);
-        act = randSub.playCard(c); // I subsitute actions for you
       }
-      return act;
+    } catch(IllegalActionException e){
+      if(Log.warn()) Log.println("Move failed " + e);
+      fallback.newRound(current);
+      act = fallback.playCard(c); // I subsitute actions for you
     }
-    return null;
+    return act;
   }
 }
 
 /**
- * Nodes for use in the Monte Carlo tree search
+ * Nodes for use in the Monte Carlo tree search.
+ * Search threads share the tree: a node's children are an immutable snapshot that is
+ * replaced by compare and set, so nodes are added without locks and readers always see
+ * a consistent list. Children are only ever appended, so a child's index never changes.
  */
 class MCTSNode {
+  private static final VarHandle CHILDREN;
+
+  static {
+    try {
+      CHILDREN = MethodHandles.lookup().findVarHandle(MCTSNode.class, "children", Children.class);
+    } catch(ReflectiveOperationException e){
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // The expanded children of a node and the action key of each, see PseudoState.actionKey
+  private static final class Children {
+    static final Children EMPTY = new Children(new int[0], new MCTSNode[0]);
+    final int[] keys;
+    final MCTSNode[] nodes;
+
+    Children(int[] keys, MCTSNode[] nodes){
+      this.keys = keys;
+      this.nodes = nodes;
+    }
+  }
+
   private MCTSNode parent;
-  private MCTSNode[] children; 
+  private volatile Children children;
   private PseudoState determinisation; // Randomly generated state for use with a single nodd
   private int depth; // Current depth of node
   private Action act; // Action associated with arriving at this node
-  private int wins; // Number of wins backpropagated through this node
-  private int tries; // Number of simulations backpropagated through this node
-  private int availablility; // Number of times this node has been considered for selection
+  private NodeStats stats; // Statistics, shared with nodes in the same information set
   private boolean leaf; // Whether this node is terminal
 
   // Construct a node
-  public MCTSNode(int depth, int maxDepth, MCTSNode parent, PseudoState state, Action act){
+  public MCTSNode(int depth, int maxDepth, MCTSNode parent, PseudoState state, Action act, NodeStats stats){
     this.depth = depth;
     this.parent = parent;
     determinisation = state;
     this.act = act;
-    children = new MCTSNode[8];
+    this.stats = stats;
+    children = Children.EMPTY;
     leaf = state.roundOver() || depth == maxDepth;
   }
 
@@ -96,7 +213,8 @@ class MCTSNode {
     parent = null;
     act = null;
     determinisation = state;
-    children = new MCTSNode[8];
+    stats = new NodeStats();
+    children = Children.EMPTY;
     leaf = false;
   }
 
@@ -111,34 +229,67 @@ class MCTSNode {
 
   public Action getAction(){return act;}
   
-  public int getWins(){return wins;}
+  public int getWins(){return stats.getWins();}
   
-  public int getTries(){return tries;}
+  public int getTries(){return stats.getTries();}
 
-  public int getAvailable(){return availablility;}
+  public int getAvailable(){return stats.getAvailable();}
 
   public int getDepth(){return depth;}
 
-  public void seen(){ availablility++;}
-  
-  public MCTSNode[] getChildren(){ return children;}
+  public void seen(){ stats.seen();}
+
+  public void addVirtualLoss(){ stats.addVirtualLoss();}
+
+  // Complete the try counted when a simulation set off through this node
+  public void resolveVirtualLoss(int win){ stats.resolveVirtualLoss(win);}
+
+  public MCTSNode child(int i){ return children.nodes[i];}
+
+  public int numChildren(){ return children.nodes.length;}
 
   // Creates a child node by cloning a state and using it to generate a node one level down
-  public MCTSNode createChild(Action act, int maxDepth) throws IllegalActionException {
+  // Children made this way are keyed by card alone, so each card has at most one
+  // Its statistics come from the table entry for the information set the observer is in after the action
+  public MCTSNode createChild(Action act, int maxDepth, TranspositionTable table, int observer) throws IllegalActionException {
     PseudoState expanded;
     expanded = determinisation.expand(act, determinisation.getNewCard());
-    MCTSNode child = new MCTSNode(depth + 1, maxDepth, this, expanded, act);
-    int cardVal = act.card().value();
-    children[cardVal - 1] = child;
-    return child;
+    NodeStats childStats = table.lookup(expanded.infoSetKey(observer));
+    MCTSNode child = new MCTSNode(depth + 1, maxDepth, this, expanded, act, childStats);
+    return addChild(act.card().value(), child);
+  }
+
+  // Creates a child for one full (card, target, guess) action, with the mover drawing from the deck
+  public MCTSNode createTurnChild(int key, int maxDepth, TranspositionTable table, int observer) throws IllegalActionException {
+    Action act = PseudoState.keyToAction(key, determinisation.nextPlayer());
+    PseudoState expanded = determinisation.expandTurn(act);
+    NodeStats childStats = table.lookup(expanded.infoSetKey(observer));
+    MCTSNode child = new MCTSNode(depth + 1, maxDepth, this, expanded, act, childStats);
+    return addChild(key, child);
+  }
+
+  // Appends a child, or returns the one another thread added under the same key first
+  private MCTSNode addChild(int key, MCTSNode child){
+    while(true){
+      Children current = children;
+      int n = current.nodes.length;
+      for(int i = 0; i < n; i++) if(current.keys[i] == key) return current.nodes[i];
+      int[] keys = Arrays.copyOf(current.keys, n + 1);
+      MCTSNode[] nodes = Arrays.copyOf(current.nodes, n + 1);
+      keys[n] = key;
+      nodes[n] = child;
+      if(CHILDREN.compareAndSet(this, current, new Children(keys, nodes))) return child;
+    }
   }
 
-  public boolean hasChild(int cardVal){
-    return children[cardVal - 1] != null;
+  public boolean hasChild(int key){
+    return getChild(key) != null;
   }
 
-  public MCTSNode getChild(int cardVal){
-  return children[cardVal - 1];
+  public MCTSNode getChild(int key){
+    Children current = children;
+    for(int i = 0; i < current.keys.length; i++) if(current.keys[i] == key) return current.nodes[i];
+    return null;
   }
 
   // Potential method for simulating multiple playouts for potentially better 
@@ -152,1069 +303,324 @@ class MCTSNode {
     else return 1;
   }
 
+  // Play out the state at a given node and have it return the winner of the round
+  public int simulateWinner(PseudoAgent[] agents, PseudoState scratch){
+    return determinisation.playOutWinner(agents, scratch);
+  }
+
   // Play out the state at a given node and have it return if the player won or not
   public int simulate(int playerIndex){
     if(determinisation.playOut(playerIndex)) return 1;
     else return 0;
   }
 
-  // Work up the tree of nodes adding one to the attempts and if applicable the wins
-  public void backProp(int win){
-    MCTSNode current = parent;
-    current.wins += win;
-    current.tries++;
-    if(current.parent != null){
-      current.backProp(win);
-    }
+  // As simulate, with rollout agents owned by the calling thread
+  public int simulate(int playerIndex, PseudoAgent[] agents){
+    return determinisation.playOutWinner(agents) == playerIndex ? 1 : 0;
+  }
 
+  // As simulate, also playing out in a scratch state owned by the calling thread
+  public int simulate(int playerIndex, PseudoAgent[] agents, PseudoState scratch){
+    return determinisation.playOutWinner(agents, scratch) == playerIndex ? 1 : 0;
   }
 }
 
 // Class for running the monte carlo search
+// Several threads may search the same tree at once. Node statistics are updated atomically,
+// children are added lock free, and each thread has its own scratch buffers and rollout agents
 class MCTS {
   private MCTSNode root;
   private int maxDepth;
   private int maxIterations;
   private double expConst;
   private int playerIndex;
+  private AtomicInteger numNodes; // Number of nodes in the tree, for metrics
+  private AtomicInteger iterations; // Iterations claimed so far, by all threads
+  private AtomicReference<Throwable> failure; // First error raised by a search thread
+  private TranspositionTable table; // Statistics shared between equivalent information sets
+  private boolean fullExpansion; // Branch over every legal action rather than one heuristic action per card
+  private SelectionPolicy policy; // Tree policy for choosing among children
+  private Evaluator evaluator; // Scores selected nodes in place of a rollout, if set
+  private double evalMix; // Fraction of simulations the evaluator replaces
+  private PseudoAgent[] callerAgents; // Rollout agents for the calling thread, if the caller keeps its own
+
+  // Progressive widening: a node with n tries may have up to WIDEN_CONST * sqrt(n + 1) children
+  private static final double WIDEN_CONST = 1.5;
 
   // Construct the tree search with variable constants like depth, iterations and exploration constant
   public MCTS(int maxDepth, int maxIterations, double expConst, State startState, Card c, int playerIndex){
-    this.maxDepth = maxDepth;
-    this.expConst = expConst;
-    this.playerIndex = playerIndex;
-    this.maxIterations = maxIterations;
-    PseudoState startDeterm = new PseudoState(startState, c);
-    root = new MCTSNode(startDeterm);
+    this(maxDepth, maxIterations, expConst, startState, c, playerIndex, false);
   }
 
-  // Runs the Information set monte carlo tree search
-  public MCTSNode ISMCTS() throws IllegalActionException {
-    int numIterations = 0;
-    while (numIterations < maxIterations){
-      MCTSNode selectedNode;
-      try {
-        selectedNode = select();
-      } catch (IllegalActionException e) {
-        throw e;
-      }
-      int win = selectedNode.simulate(playerIndex);
-      selectedNode.backProp(win);
-      numIterations++;
-      if(numIterations % 100000 == 0) System.out.println("∆GodV2∆'s move is Loading: " + numIterations/10000 + "%");
-    }
-    int maxTries = 0;
-    int bestChild = -1;
-    for(int i = 1; i <= 8; i ++){
-      if(root.hasChild(i)) {
-        int childTries = root.getChild(i).getTries();
-        if(childTries >= maxTries) {
-          maxTries = childTries;
-          bestChild = i;
-        }
-      }
-    }
-    if(bestChild == -1) System.out.println("No child found");
-    return root.getChild(bestChild);
+  // Construct the tree search, choosing whether to expand every legal action
+  public MCTS(int maxDepth, int maxIterations, double expConst, State startState, Card c, int playerIndex, boolean fullExpansion){
+    this(maxDepth, maxIterations, expConst, startState, c, playerIndex, fullExpansion, SelectionPolicy.ISUCT);
   }
 
-  // Works down the tree based on the principles of the monte carlo tree search
-  private MCTSNode select() throws IllegalActionException {
-    MCTSNode current = root;
-    while (!current.isLeaf()){
-      PseudoState currentDeterm = current.getDeterm().cloneState();
-
-      // Get the current players hand
-      PseudoCard card1 = currentDeterm.getNewCard();
-      PseudoCard card2 = currentDeterm.getCard(current.getPlayer());
-      
-      // Get the agent from state
-      int currentPlayerIndex = current.getPlayer();
-      PseudoAgent currentPlayer = currentDeterm.getPlayer(currentPlayerIndex);
-      
-      // Pick one of the cards to try first
-      PseudoCard playFirst = currentPlayer.pickRandomCard(card1, card2);
-      PseudoCard playSecond = playFirst == card1 ? card2 : card1;
-      
-      // Generate a player state to use to pick a card
-      PseudoState playerState = currentDeterm.playerState(currentPlayerIndex);
-      currentPlayer.newRound(playerState);
-
-      Action act1 = currentPlayer.playCard(playFirst);
-      Action act2 = currentPlayer.playCard(playSecond);
-
-      if(act1 == null & act2 == null) throw new IllegalActionException("Both actions are illegal: " + act1 + "|" + act2);
-      if(act1 != null && !current.hasChild(act1.card().value())){
-        try {
-          return current.createChild(act1, maxDepth);
-        } catch(IllegalActionException e){
-          throw e;
-        }
-      } else if(act2 != null && !current.hasChild(act2.card().value())){
-        try {
-          return current.createChild(act2, maxDepth);
-        } catch(IllegalActionException e){
-          throw e;
-        }
-      } else {
-        int[] cardVals = {card1.value(), card2.value()};
-        for(int i = 0; i < 2; i++){
-          current.getChild(cardVals[i]).seen();
-        }
-        current = pickISUCT(current.getChild(cardVals[0]), current.getChild(cardVals[1]));
-        try {
-          currentDeterm = currentDeterm.expand(current.getAction(), current.getDeterm().getNewCard());
-        } catch (IllegalActionException e) {
-          throw e;
-        }
-      }
-    }
-    return current;
+  // Construct the tree search, choosing the expansion and the tree policy
+  public MCTS(int maxDepth, int maxIterations, double expConst, State startState, Card c, int playerIndex, boolean fullExpansion, SelectionPolicy policy){
+    this(maxDepth, maxIterations, expConst, new PseudoState(startState, c), playerIndex, fullExpansion, policy, new TranspositionTable(16));
   }
 
-  // Choose nodes based on the ISUCT algorithm
-  private MCTSNode pickISUCT(MCTSNode node1, MCTSNode node2){
-    double node1Score = ISUCT(node1.getWins(), node1.getTries(), node1.getParent().getAvailable(), node1.getAvailable());
-    double node2Score = ISUCT(node2.getWins(), node2.getTries(), node2.getParent().getAvailable(), node2.getAvailable());
-    return node1Score > node2Score ? node1 : node2;
+  // Construct the tree search from a determinization and an empty transposition table, which an agent may keep between searches
+  public MCTS(int maxDepth, int maxIterations, double expConst, PseudoState startDeterm, int playerIndex, boolean fullExpansion, SelectionPolicy policy, TranspositionTable table){
+    this.fullExpansion = fullExpansion;
+    this.policy = policy;
+    this.maxDepth = maxDepth;
+    this.expConst = expConst;
+    this.playerIndex = playerIndex;
+    this.maxIterations = maxIterations;
+    root = new MCTSNode(startDeterm);
+    numNodes = new AtomicInteger(1);
+    iterations = new AtomicInteger();
+    failure = new AtomicReference<Throwable>();
+    this.table = table;
   }
 
-  // Actual ISUCT formula
-  private double ISUCT(int wins, int tries, int parentAvail, int avail){
-    if(tries == 0) tries++;
-    double winloss = (double)wins / (double)tries;
-    if(avail == 0) avail++;
-    return (winloss + (expConst * Math.sqrt(((2 * Math.log((double) parentAvail)) / (double) tries))));
+  // Use the caller's rollout agents on the calling thread, one per player, rather than making new ones
+  public void useAgents(PseudoAgent[] agents){
+    callerAgents = agents;
   }
 
-
-}
-
-//            _____   _          _        
-//          / ____| | |        | |       
-//         | (___  | |_  __ _ | |_  ___ 
-//         \___ \ | __|/ _` || __|/ _ \
-//         ____) || |_| (_| || |_|  __/
-//        |_____/ \__|\__,_| \__|\___|
-//                     
-//        Recycled from state class
-
-class PseudoState implements Cloneable{
-
-  private int player;
-  private int numPlayers;
-  private PseudoCard[][] discards;
-  private int[] discardCount;
-  private PseudoCard[] hand;
-  private PseudoCard[] deck;
-  private int[] top;
-  private boolean[][] known;
-  private boolean[] handmaid;
-  private int[] nextPlayer;
-  private PseudoAgent[] randomAgents;
-  private PseudoCard newCard;
-
-  public PseudoState(Random random, State startState, PseudoAgent[] randomAgents, Card c) {
-    newCard = PseudoCard.convertToPseudoCard(c);
-    initRound(random, startState, randomAgents);
+  // Score a fraction of the selected nodes with the evaluator rather than playing them out
+  public void useEvaluator(Evaluator evaluator, double mix){
+    this.evaluator = evaluator;
+    evalMix = mix;
   }
 
-  public PseudoState(State startState, Card c) {
-    newCard = PseudoCard.convertToPseudoCard(c);
-    Random random = new Random();
-    PseudoAgent[] randomAgents = {new PseudoAgent(), new PseudoAgent(), new PseudoAgent(), new PseudoAgent()};
-    initRound(random, startState, randomAgents);
+  // Runs the Information set monte carlo tree search
+  public MCTSNode ISMCTS() throws IllegalActionException {
+    return ISMCTS(1);
   }
 
-  public void initRound(Random random, State startState, PseudoAgent[] randomAgents) {
-    this.randomAgents = randomAgents;
-    player = -1;
-    numPlayers = 4;
-    PseudoCard[] discardsStack = new PseudoCard[16];
-    discards = new PseudoCard[numPlayers][16];
-    discardCount = new int[numPlayers];
-    int numDiscards = 0;
-    for(int i = 0; i < 4; i++){
-      Iterator<Card> discard = startState.getDiscards(i);
-      int j = 0;
-      while(discard.hasNext()){
-        Card next = discard.next();
-        PseudoCard convertedCard = PseudoCard.convertToPseudoCard(next);
-        discards[i][j] = convertedCard;
-        discardsStack[numDiscards] = convertedCard;
-        j++;
-        numDiscards++;
-        discardCount[i]++;
-      }
+  // Runs the search on the calling thread and threads - 1 helpers, all sharing one tree
+  public MCTSNode ISMCTS(int threads) throws IllegalActionException {
+    long start = System.nanoTime();
+    Thread[] helpers = new Thread[Math.max(0, threads - 1)];
+    for(int i = 0; i < helpers.length; i++){
+      Worker helper = new Worker();
+      helpers[i] = new Thread(helper::run, "mcts-" + (i + 1));
+      helpers[i].setDaemon(true);
+      helpers[i].start();
     }
-    discardsStack[numDiscards++] = newCard;
-    discardsStack[numDiscards] = PseudoCard.convertToPseudoCard(startState.getCard(startState.nextPlayer()));
-    top = new int[1];
-    top[0] = numDiscards;
-    deck = PseudoCard.constructDeck(random, discardsStack);
-    hand = new PseudoCard[numPlayers];
-    handmaid = new boolean[numPlayers];
-    known = new boolean[numPlayers][numPlayers];
-    for(int i = 0; i<numPlayers; i++){
-      if(startState.eliminated(i)) hand[i] = null;
-      else {
-        hand[i] = this.deck[top[0]++];
-        handmaid[i] = startState.handmaid(i);
-      }
-      known[i][i] = true;
-    }
-    nextPlayer=new int[1];
-  }
-
-  public void displayState(){
-    System.out.println("player: " + player);
-    System.out.println("discards: " + Arrays.deepToString(discards));
-    System.out.println("discardCount: " + Arrays.toString(discardCount));
-    System.out.println("hand: " + Arrays.toString(hand));
-    System.out.println("deck: " + Arrays.toString(deck));
-    System.out.println("top: " + Arrays.toString(top));
-    System.out.println("known: " + Arrays.deepToString(known));
-    System.out.println("handmaid: " + Arrays.toString(handmaid));
-    System.out.println("nextPlayer: " + Arrays.toString(nextPlayer));
-    System.out.println("Agents: " + Arrays.toString(randomAgents));
-  }
-
-  public Boolean playOut(int playerIndex){
-    int winner=0;
-    int numPlayers = 4;
-    PseudoState gameState = cloneState();//the game state
-    PseudoState[] playerStates = new PseudoState[numPlayers];
-    try{
-      // Create the game states
-      for(int i = 0; i<numPlayers; i++){
-        playerStates[i] = gameState.playerState(i);
-        randomAgents[i].newRound(playerStates[i]);
-      }
-      // Play the round
-      while(!gameState.roundOver()){
-        PseudoCard topCard = gameState.drawCard(); 
-        Action act = randomAgents[gameState.nextPlayer()].playRandomCard(topCard);
-        try{
-          gameState.update(act,topCard);
-        } catch(IllegalActionException e){ // Hopefully this shouldn't happen
-        System.out.println(e);
-        System.out.println("Stopping...");
+    new Worker(callerAgents).run();
+    for(Thread helper : helpers){
+      try {
+        helper.join();
+      } catch(InterruptedException e){
+        failure.compareAndSet(null, e);
+        Thread.currentThread().interrupt();
       }
-      for(int p = 0; p<numPlayers; p++) randomAgents[p].see(act,playerStates[p]);
-    }
-    winner = gameState.roundWinner();
-      return winner == playerIndex;
-    }catch(IllegalActionException e){
-      System.out.println("Something has gone wrong.");
-      e.printStackTrace();
-      return null;
-    }
-  }
-
-  @Override
-  protected Object clone() throws CloneNotSupportedException {
-    PseudoState cloned = (PseudoState)super.clone();
-    cloned.discards = (PseudoCard[][])cloned.discards.clone(); 
-    cloned.discardCount = (int[])cloned.discardCount.clone(); 
-    cloned.hand = (PseudoCard[])cloned.hand.clone(); 
-    cloned.deck = (PseudoCard[])cloned.deck.clone(); 
-    cloned.top = (int[])cloned.top.clone(); 
-    cloned.known = (boolean[][])cloned.known.clone(); 
-    cloned.handmaid = (boolean[])cloned.handmaid.clone(); 
-    cloned.nextPlayer = (int[])cloned.nextPlayer.clone(); 
-    return cloned;
-  }
-
-  public PseudoState cloneState(){
-    try{
-      PseudoState s = (PseudoState)this.clone();
-      return s;
-    }catch(CloneNotSupportedException e){
-      e.printStackTrace();
-      return null;
-    }
-  }
-
-  public PseudoState playerState(int player) throws IllegalActionException{
-    if(this.player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
-    if(player<0 || numPlayers<=player) throw new IllegalArgumentException("Player out of range.");
-    try{
-      PseudoState s = (PseudoState)super.clone();
-      s.player = player;
-      return s;
-    }catch(CloneNotSupportedException e){
-      e.printStackTrace();
-      return null;
-    }
-  }
-    
-  private void legalAction(int a, int t, PseudoCard c, PseudoCard drawn) throws IllegalActionException{
-    if(hand[a]!=c && drawn!=c)
-      throw new IllegalActionException("Player does not hold the played card");
-    if(nextPlayer[0]!=a)//it must be the actors turn
-      throw new IllegalActionException("Wrong player in action");
-    if((hand[a]==PseudoCard.COUNTESS || drawn==PseudoCard.COUNTESS) && (c==PseudoCard.KING || c==PseudoCard.PRINCE))//if one of the cards is the countess, a king or prince may not be played.
-      throw new IllegalActionException("Player must play the countess");
-    if(t!=-1){//if this action has a target (1,2,3,5,6 cards)
-      if(eliminated(t)) //you cannot target an eliminated player
-        throw new IllegalActionException("The action's target is already eliminated");
-      if(c==PseudoCard.PRINCE && a==t) return;//a player can always target themselves with the Prince.
-      if(handmaid(t) && (!allHandmaid(a) || c==PseudoCard.PRINCE))//you cannot target a player with the handmaid
-        throw new IllegalActionException("The action's target is protected by the handmaid");
-    } 
-  }
-
-  public boolean legalAction(Action act, PseudoCard drawn){
-    if(act ==null) return false;
-    try{
-      legalAction(act.player(), act.target(), PseudoCard.convertToPseudoCard(act.card()), drawn);
-    }
-    catch(IllegalActionException e){
-      return false;
-    }
-    return true;
-  }
-
-  public PseudoCard drawCard(){
-    return deck[top[0]++];
-  }
-
-  public PseudoState expand(Action act, PseudoCard card) throws IllegalActionException {
-    PseudoState expanded = cloneState();
-    try {
-      expanded.update(act, card);
-    } catch (IllegalActionException e){
-      throw e;
-    }
-    return expanded;
-  }
-
-  public String update(Action act, PseudoCard card) throws IllegalActionException{
-    if(player!=-1){
-      throw new IllegalActionException("Operation not permitted in player's state.");
-    }
-    int a = act.player();//actor
-    int t = act.target();//target
-    PseudoCard c = PseudoCard.convertToPseudoCard(act.card());
-    discards[a][discardCount[a]++] = c;//put played card on the top of the acting player's discard pile, required for checking actions.
-    try{
-       legalAction(a,t,c,card);
-    }catch(IllegalActionException e){
-      discardCount[a]--;
-      throw e;//reset discard top
-    }
-    if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
-      hand[a]=card;
-      for(int p = 0; p<numPlayers; p++)
-        if(p!=a) known[p][a]=false;//rescind players knowledge if a known card was played
-    }
-    handmaid[a]=false;
-    String ret = act.toString(name(a), t!=-1?name(t):"");
-    switch(c){
-      case GUARD://actor plays the guard
-        ret+=guardAction(a,t,PseudoCard.convertToPseudoCard(act.guess()));
-        break;
-      case PRIEST:
-        ret+=priestAction(a,t);
-        break;
-      case BARON:
-        ret+=baronAction(a,t);
-        break;
-      case HANDMAID:
-        handmaid[a]=true;
-        break;
-      case PRINCE:
-        ret+= princeAction(t);  
-        break;
-      case KING:
-        ret+= kingAction(a,t);
-        break;
-      case COUNTESS:  
-        //no update required
-        break;
-      case PRINCESS:
-        ret+= princessAction(a);
-        break;
-      default: 
-        System.out.println("Not a valid action");
-    }//end of switch
-    if(roundOver()){//check for round over
-      for(int i = 0; i<numPlayers; i++)
-       for(int p = 0; p<numPlayers; p++) 
-         known[i][p]=true;
-      int winner = roundWinner();
-      ret+="\nPlayer "+winner+" wins the round.";
-      nextPlayer[0] = winner;
-    }
-    else{//set nextPlayer to next noneliminated player
-      nextPlayer[0] = (nextPlayer[0]+1)%numPlayers; 
-      while(eliminated(nextPlayer[0])) nextPlayer[0] = (nextPlayer[0]+1)%numPlayers; 
     }
-    return ret;
-  }
-
-  private String guardAction(int a, int t, PseudoCard guess){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else if(guess==hand[t]){//correct guess, target eliminated
-      discards[t][discardCount[t]++] = hand[t];
-      hand[t]=null;
-      for(int p = 0; p<numPlayers; p++)known[p][t]=true;
-      return "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
-    } 
-    else return "\nPlayer "+name(t)+" does not have the "+guess;
-  }
-
-  private String priestAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else known[a][t]=true;
-    return "\nPlayer "+name(a)+" sees player "+name(t)+"'s card.";
-  }
-
-  private String baronAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    int elim = -1;
-    if(hand[a].value()>hand[t].value()) elim = t;
-    else if(hand[a].value()<hand[t].value()) elim = a;
-    if(elim!=-1){
-      discards[elim][discardCount[elim]++] = hand[elim];
-      hand[elim]=null;
-      for(int p = 0; p<numPlayers; p++) known[p][elim]=true;
-      return "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
-    }
-    known[a][t]=true;
-    known[t][a]=true;
-    return "\n Both players hold the same card, and neither is eliminated.";
-  }
-
-  private String princeAction(int t){
-    PseudoCard discard = hand[t];
-    discards[t][discardCount[t]++] = discard;
-    if(discard==PseudoCard.PRINCESS){
-      hand[t]=null;
-      for(int p = 0; p<numPlayers; p++) known[p][t]=true;
-      return "\nPlayer "+name(t)+" discarded the Princess and is eliminated.";
-    }
-    hand[t]=deck[top[0]++];
-    for(int p =0; p<numPlayers;p++) 
-      if(p!=t)known[p][t]=false;
-    return "\nPlayer "+name(t)+" discards the "+discard+".";
-  }
-
-  private String kingAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";
-    known[a][t]=true;
-    known[t][a]=true;
-    for(int p =0; p<numPlayers;p++){ 
-      if(p!=t && p!=a){
-        boolean tmp = known[p][t];
-        known[p][t] = known[p][a];
-        known[p][a] = tmp;
+    Throwable e = failure.get();
+    if(e instanceof IllegalActionException) throw (IllegalActionException) e;
+    if(e instanceof RuntimeException) throw (RuntimeException) e;
+    if(e instanceof Error) throw (Error) e;
+    int numIterations = Math.min(iterations.get(), maxIterations);
+    Metrics.MCTS_ITERATIONS.add(numIterations);
+    Metrics.MCTS_NANOS.add(System.nanoTime() - start);
+    Metrics.MCTS_TREE_SIZE.record(numNodes.get());
+    int maxTries = 0;
+    MCTSNode bestChild = null;
+    for(int i = 0; i < root.numChildren(); i++){
+      int childTries = root.child(i).getTries();
+      if(childTries >= maxTries) {
+        maxTries = childTries;
+        bestChild = root.child(i);
       }
     }
-    PseudoCard tmp = hand[a];
-    hand[a] = hand[t];
-    hand[t] = tmp;
-    return "\nPlayer "+name(a)+" and player "+name(t)+" swap cards.";
-  }
-
-  private String princessAction(int a){
-    discards[a][discardCount[a]++] = hand[a];
-    hand[a]=null;
-    for(int p = 0; p< numPlayers; p++) known[p][a]=true;
-    String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
-    outcome += "\n Player "+name(a)+" was also holding the "+discards[a][discardCount[a]-1]+".";
-    return outcome;
-  }
-
-  public int getPlayerIndex(){return player;}
-
-  public java.util.Iterator<PseudoCard> getDiscards(int player){
-    return new java.util.Iterator<PseudoCard>(){
-      int p=player;
-      int top=discardCount[player];
-      public boolean hasNext(){return top>0;}
-      public PseudoCard next() throws java.util.NoSuchElementException{
-        if(hasNext()) return discards[p][--top];
-        else throw new java.util.NoSuchElementException();
-      }
-    };
-  }
-
-  public PseudoCard getCard(int playerIndex){
-    if(player==-1 || known[player][playerIndex]) return hand[playerIndex];
-    else return null;
-  }
-
-  public boolean eliminated(int player){
-    return hand[player]==null;
-  }
-
-  public int nextPlayer(){
-    return nextPlayer[0];
-  }
-
-  public PseudoAgent getPlayer(int playerIndex){
-    return randomAgents[playerIndex];
-  }
-
-  public PseudoCard getNewCard(){ return newCard; }
-
-  public boolean handmaid(int player){
-    if(player<0 || player >=numPlayers) return false;
-    return handmaid[player];
-  }
-
-  public boolean allHandmaid(int player){
-    boolean noAction = true;
-    for(int i = 0; i<numPlayers; i++)
-      noAction = noAction && (eliminated(i) || handmaid[i] || i==player); 
-    return noAction;
-  }
-
-  private String name(int playerIndex){
-    return randomAgents[playerIndex].toString()+"("+playerIndex+")";
-  }
- 
-  public int deckSize(){
-    return 16-top[0];
-  }
-
-  public boolean roundOver(){
-    int remaining = 0;
-    for(int i=0; i<numPlayers; i++) 
-      if(!eliminated(i)) remaining++;
-    return remaining==1 || deckSize()<2;
-  }
-
-  public int roundWinner(){
-    if(!roundOver()) return -1;
-    int winner=-1;
-    int topCard=-1;
-    int discardValue=-1;
-    for(int p=0; p<numPlayers; p++){
-      if(!eliminated(p)){
-        int dv = 0;
-        for(int j=0; j<discardCount[p]; j++) dv+=discards[p][j].value();
-        if(hand[p].value()>topCard || (hand[p].value()==topCard && dv>discardValue)){
-          winner = p;
-          topCard = hand[p].value();
-          discardValue = dv;
+    if(bestChild == null && Log.warn()) Log.println("No child found");
+    return bestChild;
+  }
+
+  // One search thread's share of the iterations, with its own buffers so that nothing is shared but the tree
+  private class Worker {
+    private int[] moves = new int[PseudoState.MAX_ACTIONS]; // Legal action keys at the node being selected from
+    private MCTSNode[] candidates = new MCTSNode[PseudoState.MAX_ACTIONS]; // Expanded children legal at the node being selected from
+    private Random rand = new Random();
+    private PseudoAgent[] agents; // Rollout and selection policy
+    private MCTSNode[] path = new MCTSNode[maxDepth + 1]; // Nodes visited by the current iteration, root first
+    private int pathLength;
+    private double[] features = new double[Evaluator.FEATURES];
+    private double[] estimates = new double[root.getDeterm().numPlayers()]; // Evaluator win probabilities, by player
+    private PseudoState scratch; // Overwritten by every rollout, see PseudoState.playOutWinner
+
+    Worker(){
+      this(null);
+    }
+
+    Worker(PseudoAgent[] agents){
+      int numPlayers = root.getDeterm().numPlayers();
+      if(agents == null || agents.length != numPlayers){
+        agents = new PseudoAgent[numPlayers];
+        for(int i = 0; i < numPlayers; i++){
+          agents[i] = new PseudoAgent();
+          agents[i].reset(root.getDeterm().ruleset());
         }
       }
+      this.agents = agents;
     }
-    return winner;
-  }
-}
-
-
-//                                        _   
-//             /\                        | |  
-//            /  \    __ _   ___  _ __  | |_ 
-//          / /\ \  / _` | / _ \| '_ \ | __|
-//         / ____ \| (_| ||  __/| | | || |_ 
-//       /_/    \_\\__, | \___||_| |_| \__|
-//                  __/ |                  
-//                 |___/                           
-
-class PseudoAgent {
-
-  private Random random;
-  private PseudoState current;
-  private int agentIndex;
-  private boolean[] availableTargets;
-  private double[][] cardProb;
-  private int[] unseenCards;
-
-  public PseudoAgent(){
-    random  = new Random();
-    availableTargets = new boolean[4];
-    cardProb = new double[4][8];
-    unseenCards = new int[]{5, 2, 2, 2, 2, 1, 1, 1};
-    updateProbabilities();
-  }
 
-  public PseudoAgent(Random random){
-    this.random  = random;
-    availableTargets = new boolean[4];
-  }
-
-  public String toString(){return "NotSoRandom";}
-
-  public void newRound(PseudoState start){
-    current = start;
-    agentIndex = current.getPlayerIndex();
-    updateKnown();
-    getAvailableTargets();
-  }
-
-  public void see(Action act, PseudoState results){
-    current = results;
-    updateKnown();
-    getAvailableTargets();
-  }
-
-  private void updateKnown(){
-    for(int i = 0; i < 4; i++){
-      if(i == agentIndex) continue;
-      PseudoCard card = current.getCard(i);
-      if(card != null && cardProb[i][card.value()-1] != 1.0){
-        for(int j = 0; j < 8; j++) cardProb[i][j] = 0.0;
-        cardProb[i][card.value()-1] = 1.0;
-        unseenCards[card.value()-1]--;
-      }
-    }
-  }
-
-  private void updateProbabilities(){
-    int totalUnseenCards = 0;
-    for(int i = 0; i < 8; i++){
-      totalUnseenCards += unseenCards[i];
-    }
-    for(int i = 0; i < 8; i++){
-      for(int j = 0; j < 4; j++){
-        if(j == agentIndex) continue;
-        cardProb[j][i] = (double)unseenCards[i] / (double)totalUnseenCards;
+    void run(){
+      try {
+        int numIterations;
+        while(failure.get() == null && (numIterations = iterations.incrementAndGet()) <= maxIterations){
+          pathLength = 0;
+          MCTSNode selectedNode = fullExpansion ? selectWidened() : select();
+          backProp(simulate(selectedNode));
+          if(numIterations % 100000 == 0 && Log.debug()) Log.println("∆GodV2∆'s move is Loading: " + numIterations/10000 + "%");
+        }
+      } catch(IllegalActionException | RuntimeException | Error e){
+        failure.compareAndSet(null, e);
       }
     }
-  }
 
-  private void getAvailableTargets(){
-    for(int i = 0; i < 4; i++){
-      if(i == agentIndex || current.eliminated(i) || current.handmaid(i)) availableTargets[i] = false;
-      else availableTargets[i] = true;
-    }
-  }
-
-  private boolean targetsAvailable(){
-    for(int i = 0; i < 4; i++) if(availableTargets[i]) return true;
-    return false;
-  }
-
-  public PseudoCard pickRandomCard(PseudoCard c, PseudoCard d){
-    if(random.nextDouble() < 0.5) return c;
-    else return d;
-  }
-
-  public int getRandomTarget(PseudoCard c){
-    int target;
-    switch(c){
-      case GUARD:
-        target = getTarget();
-        break;
-      case PRIEST:
-        target = getTarget();
-        break;
-      case BARON:  
-        target = getTarget();
-        break;
-      case PRINCE:  
-        target = getRandomPrinceTarget();
-        break;
-      case KING:
-        target = getTarget();
-        break;
-      default:
-        target = -1; // Princess, Handmaid and Countess don't target
-    }
-    return target;
-  }
-
-  private int getTarget(){
-    getAvailableTargets();
-    
-    // Try and find someone available
-    for(int i = 0; i < 4; i++) {
-      if(availableTargets[i]) return i;
-    }
-    // If not try and find someone not eliminated
-    for(int i = 0; i < 4; i++){
-      if(i == agentIndex) continue;
-      if(!current.eliminated(i)) return i;
-    }
-    System.out.println("Get target has failed");
-    return agentIndex;
-  }
-
-  private int getRandomPrinceTarget(){
-    Random rand = new Random();
-    int i = rand.nextInt(3);
-    int j = agentIndex;
-    while(i >= 0){
-      for(int k = 0; k < 4; k++){
-        if(availableTargets[k]){
-          j = k;
-          i--;
+    // Play out the selected node for its winner, or score it with the evaluator and draw a winner from
+    // the estimates of those still in the round, so that node statistics stay whole numbers of wins
+    private int simulate(MCTSNode node){
+      PseudoState determ = node.getDeterm();
+      if(evaluator != null && rand.nextDouble() < evalMix){
+        int numPlayers = determ.numPlayers();
+        double total = 0;
+        for(int p = 0; p < numPlayers; p++){
+          estimates[p] = determ.eliminated(p) ? 0 : evaluator.winProbability(determ, p, features);
+          total += estimates[p];
         }
-        if(i == 0) break;
+        double draw = rand.nextDouble() * total;
+        for(int p = 0; p < numPlayers; p++){
+          if(estimates[p] > 0 && (draw -= estimates[p]) < 0) return p;
+        }
+        // Rounding left the draw unspent or every estimate was 0, so play it out instead
       }
-      i--;
+      if(scratch == null) scratch = determ.cloneState();
+      return node.simulateWinner(agents, scratch);
     }
-    return j;
-  }
 
-  public int getBestTarget(PseudoCard c, PseudoCard otherCard){
-    int target;
-    switch(c){
-      case GUARD:
-        target = getBestGuardTarget();
-        break;
-      case PRIEST:
-        target = getBestPriestTarget();
-        break;
-      case BARON:  
-        target = getBestBaronTarget(otherCard.value());
-        break;
-      case PRINCE:  
-        target = getBestPrinceTarget();
-        break;
-      case KING:
-        target = getBestKingTarget(otherCard.value());
-        break;
-      default:
-        target = -1; // Princess, Handmaid and Countess don't target
+    // Adds a node to the path, counting a virtual loss for it until the simulation result comes back
+    private MCTSNode visit(MCTSNode node){
+      node.addVirtualLoss();
+      path[pathLength++] = node;
+      return node;
     }
-    return target;
-  }
 
-  private int getBestGuardTarget(){
-    return getBestGuardMove()[0];
-  }
-
-  private int getBestGuardCard(){
-    return getBestGuardMove()[1];
-  }
-
-  private int[] getBestGuardMove(){
-    int[] guess = new int[2];
-    double prob = 0;
-    for(int i = 0; i < 4; i++){
-      if(!availableTargets[i]) continue;
-      for(int j = 1; j < 8; j++){
-        if(cardProb[i][j] >= prob) {
-          prob = cardProb[i][j];
-          guess[0] = i;
-          guess[1] = j+1;
-        }
+    // Works back along the path in one pass, including the node simulated, counting a win for every node
+    // whose move the winner made so that each player is modelled as playing for themself
+    // The root has no move and is scored for the searching player
+    private void backProp(int winner){
+      for(int i = pathLength - 1; i >= 0; i--){
+        Action act = path[i].getAction();
+        path[i].resolveVirtualLoss((act == null ? playerIndex : act.player()) == winner ? 1 : 0);
+        path[i] = null;
       }
-    }
-    if(prob == 0 && !targetsAvailable()) {
-      guess[0] = (agentIndex + 1) % 4;
-      guess[1] = 8;
-    }
-    else if(prob == 0) for(int i = 0; i < 4; i++) if(availableTargets[i]) {
-      guess[0] = i;
-      guess[1] = 8;
-    }
-    return guess;
-  }
-
-  private int getBestPriestTarget(){
-    int target = (agentIndex + 1) % 4;
-    double prob = 1;
-    for(int i = 0; i < 4; i++){
-      if(!availableTargets[i]) continue;
-      for(int j = 0; j < 8; j++){
-        if(cardProb[i][j] == 0) continue;
-        else if(cardProb[i][j] <= prob) {
-          target = i;
-          prob = cardProb[i][j];
+      pathLength = 0;
+    }
+
+    // Works down the tree based on the principles of the monte carlo tree search
+    // Node states are only read here, so the player's agent looks at them directly rather than through a copy
+    private MCTSNode select() throws IllegalActionException {
+      MCTSNode current = visit(root);
+      while (!current.isLeaf()){
+        PseudoState currentDeterm = current.getDeterm();
+
+        // Get the current players hand
+        int currentPlayerIndex = current.getPlayer();
+        PseudoCard card1 = currentDeterm.getNewCard();
+        PseudoCard card2 = currentDeterm.getCard(currentPlayerIndex, currentPlayerIndex);
+        
+        // Get this thread's agent for the player, seeing the state as that player would
+        PseudoAgent currentPlayer = agents[currentPlayerIndex];
+        currentPlayer.observe(currentDeterm, currentPlayerIndex);
+        
+        // Pick one of the cards to try first, leaving out a card not worth playing
+        PseudoCard playFirst = currentPlayer.pickRandomCard(card1, card2);
+        PseudoCard playSecond = playFirst == card1 ? card2 : card1;
+        int plays = HandPairs.plays(card2.value(), card1.value());
+
+        Action act1 = (plays >> playFirst.value() & 1) != 0 ? currentPlayer.playCard(playFirst) : null;
+        Action act2 = (plays >> playSecond.value() & 1) != 0 && playSecond != playFirst ? currentPlayer.playCard(playSecond) : null;
+
+        if(act1 == null & act2 == null) throw new IllegalActionException("Both actions are illegal: " + act1 + "|" + act2);
+        if(act1 != null && !current.hasChild(act1.card().value())){
+          numNodes.incrementAndGet();
+          return visit(current.createChild(act1, maxDepth, table, playerIndex));
+        } else if(act2 != null && !current.hasChild(act2.card().value())){
+          numNodes.incrementAndGet();
+          return visit(current.createChild(act2, maxDepth, table, playerIndex));
+        } else {
+          int count = 0;
+          if(act1 != null) candidates[count++] = current.getChild(act1.card().value());
+          if(act2 != null) candidates[count++] = current.getChild(act2.card().value());
+          for(int i = 0; i < count; i++) candidates[i].seen();
+          current = visit(pickChild(current, candidates, count));
         }
       }
-    }
-    if(prob == 1 && !targetsAvailable()) target = (agentIndex + 1) % 4;
-    else if(prob == 1) for(int i = 0; i < 4; i++) if(availableTargets[i]) {
-      target = i;
-    }
-    return target;
-  }
-
-  private int getBestBaronTarget(int cardVal){
-    int target = (agentIndex + 1) % 4;
-    double prob = 0.3;
-    int lowestCard = 9;
-    for(int i = 0; i < 4; i++){
-      if(!availableTargets[i]) continue;
-      for(int j = 0; j < 8; j++){
-        if(cardProb[i][j] >= prob && j + 1 <= lowestCard) {
-          target = i;
-          lowestCard = j + 1;
-          prob = cardProb[i][j];
-        }
-        else if(cardProb[i][j] == 1 && j + 1 < cardVal) {
-          target = i;
-          lowestCard = 0;
+      return current;
+    }
+
+    // Works down the tree over every legal action, adding children by progressive widening
+    // so that wide nodes such as Guard guesses only grow as they are visited
+    private MCTSNode selectWidened() throws IllegalActionException {
+      MCTSNode current = visit(root);
+      while (!current.isLeaf()){
+        PseudoState determ = current.getDeterm();
+        int count = determ.legalActions(determ.nextDraw(), moves);
+        if(count == 0) throw new IllegalActionException("No legal actions for player " + determ.nextPlayer());
+
+        // Split the legal actions into expanded children and unexpanded keys, compacted to the front of moves
+        int legalChildren = 0;
+        int unexpanded = 0;
+        for(int i = 0; i < count; i++){
+          MCTSNode child = current.getChild(moves[i]);
+          if(child != null){
+            child.seen();
+            candidates[legalChildren++] = child;
+          }
+          else moves[unexpanded++] = moves[i];
         }
-      }
-    }
-    if(lowestCard == 9 && !targetsAvailable()) target = (agentIndex + 1) % 4;
-    else if(lowestCard == 9) for(int i = 0; i < 4; i++) if(availableTargets[i]) {
-      target = i;
-    }
-    return target;
-  }
 
-  private int getBestPrinceTarget(){
-     int target = agentIndex;
-    double prob = 0;
-    int highestCard = 0;
-    for(int i = 0; i < 4; i++){
-      if(!availableTargets[i]) continue;
-      for(int j = 0; j < 8; j++){
-        if(cardProb[i][j] >= prob && j + 1 >= highestCard) {
-          target = i;
-          highestCard = j + 1;
-          prob = cardProb[i][j];
+        // The current iteration's own try is already counted on this node
+        int limit = (int) Math.ceil(WIDEN_CONST * Math.sqrt(current.getTries()));
+        if(unexpanded > 0 && (legalChildren == 0 || current.numChildren() < limit)){
+          numNodes.incrementAndGet();
+          return visit(current.createTurnChild(pickUnexpanded(current, unexpanded), maxDepth, table, playerIndex));
         }
+        current = visit(pickChild(current, candidates, legalChildren));
       }
+      return current;
     }
-    if(highestCard == 0 && !targetsAvailable()) target = agentIndex;
-    else if(highestCard == 0) for(int i = 0; i < 4; i++) if(availableTargets[i]) {
-      target = i;
-    }
-    return target;
-  }
 
-  private int getBestKingTarget(int cardVal){
-    int target = (agentIndex + 1) % 4;
-    double prob = 0.6;
-    int highestCard = 0;
-    for(int i = 0; i < 4; i++){
-      if(!availableTargets[i]) continue;
-      for(int j = 0; j < 8; j++){
-        if(cardProb[i][j] >= prob && j + 1 >= highestCard) {
-          target = i;
-          highestCard = j + 1;
-          prob = cardProb[i][j];
+    // Pick an unexpanded action, preferring cards that have no children yet so each card is tried early
+    private int pickUnexpanded(MCTSNode node, int unexpanded){
+      int start = rand.nextInt(unexpanded);
+      for(int i = 0; i < unexpanded; i++){
+        int key = moves[(start + i) % unexpanded];
+        boolean cardTried = false;
+        for(int j = 0; j < node.numChildren() && !cardTried; j++){
+          cardTried = node.child(j).getAction().card().value() == PseudoState.keyCard(key);
         }
+        if(!cardTried) return key;
       }
+      return moves[start];
     }
-    if(highestCard == 0 && !targetsAvailable()) target = (agentIndex + 1) % 4;
-    else if(highestCard == 0) for(int i = 0; i < 4; i++) if(availableTargets[i]) {
-      target = i;
-    }
-    return target;
   }
 
-  public Action playCard(PseudoCard c){
-    Random rand = new Random();
-    Action act = null;
-    PseudoCard otherCard = current.getCard(agentIndex);
-    updateKnown();
-    getAvailableTargets();
-    int target = getBestTarget(c, otherCard);
-    // int target = getRandomTarget(c);
-    try{
-      switch(c){
-        case GUARD:
-          act = Action.playGuard(agentIndex, target, Card.values()[getBestGuardCard()-1]);
-          // act = Action.playGuard(agentIndex, target, Card.values()[rand.nextInt(7)+1]);
-          break;
-        case PRIEST:
-          act = Action.playPriest(agentIndex, target);
-          break;
-        case BARON:  
-          act = Action.playBaron(agentIndex, target);
-          break;
-        case HANDMAID:
-          act = Action.playHandmaid(agentIndex);
-          break;
-        case PRINCE:  
-          act = Action.playPrince(agentIndex, target);
-          break;
-        case KING:
-          act = Action.playKing(agentIndex, target);
-          break;
-        case COUNTESS:
-          act = Action.playCountess(agentIndex);
-          break;
-        case PRINCESS:
-          act = Action.playPrincess(agentIndex);
-          break;
-        default:
-          act = null;
+  // Choose among the candidate children of parent with the tree policy, later candidates winning ties
+  private MCTSNode pickChild(MCTSNode parent, MCTSNode[] nodes, int count){
+    int parentTries = parent.getTries();
+    MCTSNode best = nodes[0];
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for(int i = 0; i < count; i++){
+      double score = policy.score(nodes[i].getWins(), nodes[i].getTries(), parentTries, nodes[i].getAvailable(), count, expConst);
+      if(score >= bestScore){
+        best = nodes[i];
+        bestScore = score;
       }
-      if(act == null) throw new IllegalActionException("No legal action found");
-    }catch(IllegalActionException e){/*do nothing*/}
-    return act;
-  }
-
-  public Action playRandomCard(PseudoCard c){
-    Action act = null;
-    PseudoCard play;
-    while(!current.legalAction(act, c)){
-      if(random.nextDouble() < 0.5) play = c;
-      else play = current.getCard(agentIndex);
-      int target = random.nextInt(4);
-      try{
-        switch(play){
-          case GUARD:
-            act = Action.playGuard(agentIndex, target, Card.values()[random.nextInt(7)+1]);
-            break;
-          case PRIEST:
-            act = Action.playPriest(agentIndex, target);
-            break;
-          case BARON:  
-            act = Action.playBaron(agentIndex, target);
-            break;
-          case HANDMAID:
-            act = Action.playHandmaid(agentIndex);
-            break;
-          case PRINCE:  
-            act = Action.playPrince(agentIndex, target);
-            break;
-          case KING:
-            act = Action.playKing(agentIndex, target);
-            break;
-          case COUNTESS:
-            act = Action.playCountess(agentIndex);
-            break;
-          default:
-            act = null;//never play princess
-        }
-      }catch(IllegalActionException e){/*do nothing*/}
     }
-    return act;
-  }
-}
-
-//             _____                 _ 
-//           / ____|               | |
-//          | |      __ _  _ __  __| |
-//         | |     / _` || '__|/ _` |
-//         | |____| (_| || |  | (_| |
-//         \_____|\__,_||_|   \__,_|
-//
-//         Recycled from card class  
-
-enum PseudoCard {
-
-  GUARD(1,"Guard",5),
-  PRIEST(2,"Priest",2),
-  BARON(3,"Baron",2),
-  HANDMAID(4,"Handmaid",2),
-  PRINCE(5,"Prince",2),
-  KING(6,"King",1),
-  COUNTESS(7,"Countess",1),
-  PRINCESS(8,"Princess",1);
-
-  private int value; //numerical value of card
-  private String name; //String description of card
-  private int count; //number of cards in the deck
-
-  private PseudoCard(int value, String name, int count){
-    this.value = value;
-    this.name = name;
-    this.count = count;
+    return best;
   }
 
-  public int value(){return value;}
 
-  public String toString(){return name;}
-  
-  public int count(){return count;}
-  
-  public static PseudoCard[] constructDeck(Random rand, PseudoCard[] discards){
-    PseudoCard[] deck = new PseudoCard[16];
-    int deckIndex = 0;
-    while(discards[deckIndex] != null) {
-      deck[deckIndex] = discards[deckIndex];
-      deckIndex++;
-    }
-    PseudoCard[] deckLeft = new PseudoCard[16-deckIndex];
-    int j = 0;
-    for(PseudoCard c: PseudoCard.values()) {
-      int countLeft = c.count();
-      for(int i = 0; i<deckIndex; i++){
-        if(deck[i].value() == c.value()) countLeft--;
-      }
-      for(int i = 0; i<countLeft; i++){
-        deckLeft[j++] = c;
-      }
-    }
-    for(int i = 0; i<50; i++){//make two hundred random swaps of cards
-      int index1 = rand.nextInt(deckLeft.length);
-      int index2 = rand.nextInt(deckLeft.length);
-      PseudoCard c = deckLeft[index1];
-      deckLeft[index1]=deckLeft[index2];
-      deckLeft[index2]=c;
-    }
-    for(int i = 0; i<deckLeft.length; i++) deck[i + deckIndex] = deckLeft[i];
-    return deck;
-  }
-
-  public static PseudoCard[] constructDeck(PseudoCard[] discards){
-    return constructDeck(new java.util.Random(), discards);
-  }
-
-  public static PseudoCard convertToPseudoCard(Card c){
-    PseudoCard convertedCard;
-    switch(c){
-      case GUARD:
-        convertedCard = PseudoCard.GUARD;
-        break;
-      case PRIEST:
-        convertedCard = PseudoCard.PRIEST;
-        break;
-      case BARON:
-        convertedCard = PseudoCard.BARON;
-        break;
-      case HANDMAID:
-        convertedCard = PseudoCard.HANDMAID;
-        break;
-      case PRINCE:
-        convertedCard = PseudoCard.PRINCE;
-        break;
-      case KING:
-        convertedCard = PseudoCard.KING;
-        break;
-      case COUNTESS:  
-        convertedCard = PseudoCard.COUNTESS;
-        break;
-      case PRINCESS:
-        convertedCard = PseudoCard.PRINCESS;
-        break;
-      default: 
-        return null;
-    }
-    return convertedCard;
-  }
-
-  public static Card convertFromPseudoCard(PseudoCard c){
-    Card convertedCard;
-    switch(c){
-      case GUARD:
-        convertedCard = Card.GUARD;
-        break;
-      case PRIEST:
-        convertedCard = Card.PRIEST;
-        break;
-      case BARON:
-        convertedCard = Card.BARON;
-        break;
-      case HANDMAID:
-        convertedCard = Card.HANDMAID;
-        break;
-      case PRINCE:
-        convertedCard = Card.PRINCE;
-        break;
-      case KING:
-        convertedCard = Card.KING;
-        break;
-      case COUNTESS:  
-        convertedCard = Card.COUNTESS;
-        break;
-      case PRINCESS:
-        convertedCard = Card.PRINCESS;
-        break;
-      default: 
-        return null;
-    }
-    return convertedCard;
-  }
 }
 
+
 // Congratulations for making it down here
\ No newline at end of file
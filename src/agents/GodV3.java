@@ -1,40 +1,37 @@
 package agents;
 
-import java.util.Random;
-
 import loveletter.Action;
 import loveletter.Agent;
 import loveletter.Card;
-import loveletter.IllegalActionException;
 import loveletter.State;
 
 /**
  * A monte carlo tree search fueled by a genetic algorithm
+ * For now it plays the policy evolved by Evolution directly.
  */
 public class GodV3 implements Agent{
 
-  private Random rand;
-  private State current;
-  private int myIndex;
+  private Agent19617810 evolved;
 
   public GodV3(){
-    rand  = new Random();
+    evolved = new Agent19617810(AleatoricPolicy.standard());
   }
 
   public String toString(){return "†GodV3†";}
 
+  public void newGame(State start){
+    evolved.newGame(start);
+  }
+
   public void newRound(State start){
-    current = start;
-    myIndex = current.getPlayerIndex();
+    evolved.newRound(start);
   }
 
   public void see(Action act, State results){
-    current = results;
+    evolved.see(act, results);
   }
 
   public Action playCard(Card c){
-    RandomAgent randSub = new RandomAgent();
-    Action act = randSub.playCard(c); // Get random card for testing
-    return act;
+    return evolved.playCard(c);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package agents;
+
+/**
+ * What is worth considering for each of the 64 pairs of held and drawn card, built once.
+ * A pair is forced when the rules allow only one card, the Countess beside the King or Prince,
+ * or when both cards are the same; dominant when one card is never worse, as playing anything
+ * beats discarding the Princess; and open otherwise. The plays of a pair are a mask with bit v
+ * set for each card value worth playing, so agents and rollouts can settle the card to play
+ * with an array read before thinking about targets.
+ * A Handmaid pair is left open: keeping or playing the Handmaid is never forced or dominant,
+ * so a preference for it belongs to an agent's policy, as in GodV1's, rather than to the table
+ * that search and rollouts prune with.
+ */
+final class HandPairs {
+  static final int OPEN = 0;
+  static final int DOMINANT = 1;
+  static final int FORCED = 2;
+
+  private static final byte[] STATUS = new byte[64];
+  private static final short[] PLAYS = new short[64];
+
+  static {
+    for(int held = 1; held <= 8; held++){
+      for(int drawn = 1; drawn <= 8; drawn++){
+        int i = index(held, drawn);
+        if(held == drawn) set(i, FORCED, held);
+        else if((held == 7 && (drawn == 5 || drawn == 6)) || (drawn == 7 && (held == 5 || held == 6))) set(i, FORCED, 7);
+        else if(held == 8) set(i, DOMINANT, drawn);
+        else if(drawn == 8) set(i, DOMINANT, held);
+        else {
+          STATUS[i] = OPEN;
+          PLAYS[i] = (short) (1 << held | 1 << drawn);
+        }
+      }
+    }
+  }
+
+  private HandPairs(){}
+
+  private static void set(int i, int status, int play){
+    STATUS[i] = (byte) status;
+    PLAYS[i] = (short) (1 << play);
+  }
+
+  private static int index(int held, int drawn){ return (held - 1) * 8 + drawn - 1; }
+
+  /** @return OPEN, DOMINANT or FORCED */
+  static int status(int held, int drawn){ return STATUS[index(held, drawn)]; }
+
+  /** @return a mask with bit v set for each card value worth playing */
+  static int plays(int held, int drawn){ return PLAYS[index(held, drawn)]; }
+
+  /** @return whether card value v is worth playing from the pair */
+  static boolean plays(int held, int drawn, int v){ return (PLAYS[index(held, drawn)] >> v & 1) != 0; }
+
+  /** @return the only card value worth playing, or 0 if the pair is open */
+  static int only(int held, int drawn){
+    int plays = PLAYS[index(held, drawn)];
+    return (plays & plays - 1) == 0 ? Integer.numberOfTrailingZeros(plays) : 0;
+  }
+}
@@ -0,0 +1,180 @@
+package agents;
+import loveletter.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A heuristic policy declared as rules and compiled for fast play.
+ * Rules about which card to play from a hand pair are tried in the order they were declared,
+ * the first with an opinion deciding, and are evaluated once for all 64 pairs into a table.
+ * Targets are chosen by a scoring function per card over the public state and the agent's
+ * beliefs, among the players the card may legally target, and the Guard's guess by another.
+ * A decision is then a table read and a score for each player the engine's targetable mask allows.
+ * <pre>
+ * HeuristicPolicy policy = new HeuristicPolicy.Builder()
+ *   .settled()
+ *   .otherwise(HeuristicPolicy.LOWER)
+ *   .target(Card.PRIEST, (state, me, t, beliefs) -&gt; beliefs.cardKnown(t) ? 0 : 1)
+ *   .build();
+ * </pre>
+ */
+class HeuristicPolicy {
+
+  /** A rule over a hand pair: the value of the card to play, or 0 if the rule has no opinion */
+  interface PairRule { int play(int held, int drawn); }
+
+  /** How much to prefer a target, who may legally be targeted */
+  interface TargetScore { double score(State state, int me, int target, CardCount beliefs); }
+
+  /** The value of the card to name when playing the Guard at target */
+  interface GuessRule { int guess(State state, int me, int target, CardCount beliefs); }
+
+  /** Plays the lower card of the pair */
+  static final PairRule LOWER = (held, drawn) -> Math.min(held, drawn);
+
+  private static final Card[] CARDS = Card.values(); // values() copies its array on every call
+
+  private final byte[] table; // Card value to play, indexed by (held - 1) * 8 + drawn - 1
+  private final TargetScore[] targets; // By card value
+  private final GuessRule guess;
+
+  private HeuristicPolicy(byte[] table, TargetScore[] targets, GuessRule guess){
+    this.table = table;
+    this.targets = targets;
+    this.guess = guess;
+  }
+
+  /**
+   * Declares the rules of a policy.
+   * Cards without a target score choose the first legal target.
+   */
+  static class Builder {
+    private final List<PairRule> rules = new ArrayList<PairRule>();
+    private final TargetScore[] targets = new TargetScore[9];
+    private GuessRule guess = (state, me, target, beliefs) -> Card.PRIEST.value();
+
+    /** Adds a rule, consulted if every earlier rule has no opinion */
+    Builder rule(PairRule rule){
+      rules.add(rule);
+      return this;
+    }
+
+    /** Never plays card while the other card can be played */
+    Builder never(Card card){
+      int v = card.value();
+      return rule((held, drawn) -> held == v ? drawn : drawn == v ? held : 0);
+    }
+
+    /** Plays the only card worth playing from forced and dominant pairs, see HandPairs */
+    Builder settled(){
+      return rule(HandPairs::only);
+    }
+
+    /** Plays card whenever it is held */
+    Builder prefer(Card card){
+      int v = card.value();
+      return rule((held, drawn) -> held == v || drawn == v ? v : 0);
+    }
+
+    /** Plays card whenever it is held with any of with */
+    Builder forced(Card card, Card... with){
+      int v = card.value();
+      int mask = 0;
+      for(Card w : with) mask |= 1 << w.value();
+      int others = mask;
+      return rule((held, drawn) -> (held == v && (others >> drawn & 1) != 0) || (drawn == v && (others >> held & 1) != 0) ? v : 0);
+    }
+
+    /** The rule for pairs no earlier rule decided; it must always have an opinion */
+    Builder otherwise(PairRule rule){
+      return rule(rule);
+    }
+
+    Builder target(Card card, TargetScore score){
+      targets[card.value()] = score;
+      return this;
+    }
+
+    Builder guess(GuessRule rule){
+      guess = rule;
+      return this;
+    }
+
+    /**
+     * Evaluates the pair rules for every hand pair.
+     * @return the compiled policy
+     * @throws IllegalStateException if some pair is left undecided or is decided for a card not held
+     */
+    HeuristicPolicy build(){
+      byte[] table = new byte[64];
+      for(int held = 1; held <= 8; held++){
+        for(int drawn = 1; drawn <= 8; drawn++){
+          int play = 0;
+          for(int r = 0; r < rules.size() && play == 0; r++) play = rules.get(r).play(held, drawn);
+          if(play != held && play != drawn) throw new IllegalStateException("No card chosen from " + held + " and " + drawn);
+          table[(held - 1) * 8 + drawn - 1] = (byte) play;
+        }
+      }
+      return new HeuristicPolicy(table, targets.clone(), guess);
+    }
+  }
+
+  /**
+   * @param held the value of the card in hand
+   * @param drawn the value of the card drawn
+   * @return the value of the card to play
+   */
+  int play(int held, int drawn){
+    return table[(held - 1) * 8 + drawn - 1];
+  }
+
+  /**
+   * Chooses a complete action.
+   * @param state the player's view of the game
+   * @param drawn the card drawn
+   * @param beliefs what the player believes of the other hands
+   * @return the action, which is legal in state
+   * @throws IllegalActionException if no action can be built, which the rules of the game rule out
+   */
+  Action decide(State state, Card drawn, CardCount beliefs) throws IllegalActionException {
+    int me = state.getPlayerIndex();
+    Card card = CARDS[play(state.getCard(me).value(), drawn.value()) - 1];
+    switch(card){
+      case HANDMAID: return Action.playHandmaid(me);
+      case COUNTESS: return Action.playCountess(me);
+      case PRINCESS: return Action.playPrincess(me);
+      default:
+    }
+    int target = target(card, state, me, beliefs);
+    switch(card){
+      case GUARD: return Action.playGuard(me, target, CARDS[guess.guess(state, me, target, beliefs) - 1]);
+      case PRIEST: return Action.playPriest(me, target);
+      case BARON: return Action.playBaron(me, target);
+      case PRINCE: return Action.playPrince(me, target);
+      default: return Action.playKing(me, target);
+    }
+  }
+
+  // The best scoring opponent who is neither out nor protected, else one who is protected, or oneself for the Prince
+  private int target(Card card, State state, int me, CardCount beliefs){
+    int open = state.targetable(me);
+    if(open == 0){
+      if(card == Card.PRINCE) return me;
+      return Integer.numberOfTrailingZeros(state.remaining() & ~(1 << me));
+    }
+    TargetScore score = targets[card.value()];
+    if(score == null) return Integer.numberOfTrailingZeros(open);
+    int best = -1;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for(int rest = open; rest != 0; rest &= rest - 1){
+      int p = Integer.numberOfTrailingZeros(rest);
+      double s = score.score(state, me, p, beliefs);
+      if(s > bestScore){
+        best = p;
+        bestScore = s;
+      }
+    }
+    return best;
+  }
+}
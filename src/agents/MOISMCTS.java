@@ -0,0 +1,226 @@
+package agents;
+import loveletter.*;
+
+import java.util.Random;
+
+/**
+ * Multi-observer information set Monte Carlo tree search.
+ * Every iteration deals a fresh determinisation consistent with what the searching player
+ * has seen and plays down it in place. Each player picks their moves from statistics keyed by
+ * their own information set and the action, held in one compact table per player, so the same
+ * decision reached in different sampled worlds shares its statistics and the search never
+ * settles on a single sampled world.
+ */
+class MOISMCTS {
+  private static final int TABLE_BITS = 16;
+
+  private State startState;
+  private Card drawn;
+  private int playerIndex;
+  private int maxDepth;
+  private int maxIterations;
+  private double expConst;
+  private SelectionPolicy policy; // Tree policy for choosing among legal actions
+  private StatsTable[] tables; // One per player, keyed by that player's information set and action
+  private PseudoAgent[] agents; // Rollout policy
+  private Random rand;
+  private int[] moves; // Legal action keys at the current step
+  private int[] slots; // Table slot of each legal action at the current step
+  private int[] pathPlayer; // Player to move at each step of the iteration
+  private int[] pathSlot; // Slot of the action they took
+  private long[] pathKey; // Key of the action they took, in case the slot was reused
+
+  // Construct the search with variable constants like depth, iterations and exploration constant
+  public MOISMCTS(int maxDepth, int maxIterations, double expConst, State startState, Card c, int playerIndex){
+    this(maxDepth, maxIterations, expConst, startState, c, playerIndex, SelectionPolicy.ISUCT);
+  }
+
+  // Construct the search, choosing the tree policy
+  public MOISMCTS(int maxDepth, int maxIterations, double expConst, State startState, Card c, int playerIndex, SelectionPolicy policy){
+    this.policy = policy;
+    this.maxDepth = maxDepth;
+    this.maxIterations = maxIterations;
+    this.expConst = expConst;
+    this.startState = startState;
+    this.playerIndex = playerIndex;
+    drawn = c;
+    int numPlayers = startState.numPlayers();
+    tables = new StatsTable[numPlayers];
+    agents = new PseudoAgent[numPlayers];
+    for(int i = 0; i < numPlayers; i++){
+      tables[i] = new StatsTable(TABLE_BITS);
+      agents[i] = new PseudoAgent();
+      agents[i].reset(startState.ruleset());
+    }
+    rand = new Random();
+    moves = new int[PseudoState.MAX_ACTIONS];
+    slots = new int[PseudoState.MAX_ACTIONS];
+    pathPlayer = new int[maxDepth];
+    pathSlot = new int[maxDepth];
+    pathKey = new long[maxDepth];
+  }
+
+  // Runs the search and returns the most tried action at the root
+  public Action search() throws IllegalActionException {
+    long start = System.nanoTime();
+    for(int i = 0; i < maxIterations; i++) iterate();
+    Metrics.MCTS_ITERATIONS.add(maxIterations);
+    Metrics.MCTS_NANOS.add(System.nanoTime() - start);
+
+    PseudoState root = new PseudoState(rand, startState, agents, drawn);
+    PseudoCard card = root.nextDraw();
+    long info = root.infoSetKey(playerIndex) ^ TranspositionTable.drawnKey(card.value());
+    int count = root.legalActions(card, moves);
+    int best = -1;
+    int bestTries = -1;
+    for(int i = 0; i < count; i++){
+      int slot = tables[playerIndex].find(info ^ TranspositionTable.actionHash(moves[i]));
+      int tries = slot == -1 ? 0 : tables[playerIndex].tries(slot);
+      if(tries > bestTries){
+        best = i;
+        bestTries = tries;
+      }
+    }
+    if(best == -1) throw new IllegalActionException("No legal actions at the root");
+    return PseudoState.keyToAction(moves[best], playerIndex);
+  }
+
+  // One iteration: sample a world, descend until an unvisited action or the depth limit, roll out, back up
+  private void iterate() throws IllegalActionException {
+    PseudoState determ = new PseudoState(rand, startState, agents, drawn);
+    int depth = 0;
+    boolean expanded = false;
+    while(!expanded && depth < maxDepth && !determ.roundOver()){
+      int p = determ.nextPlayer();
+      PseudoCard card = determ.nextDraw();
+      long info = determ.infoSetKey(p) ^ TranspositionTable.drawnKey(card.value());
+      int count = determ.legalActions(card, moves);
+      if(count == 0) throw new IllegalActionException("No legal actions for player " + p);
+      StatsTable table = tables[p];
+
+      // Every legal action was available this iteration; pick an untried one if there is one
+      int chosen = -1;
+      int untried = 0;
+      for(int i = 0; i < count; i++){
+        // Siblings claimed earlier in this step are not evicted; an action with no slot left goes untracked
+        slots[i] = table.slot(info ^ TranspositionTable.actionHash(moves[i]), slots, i);
+        if(slots[i] >= 0) table.seen(slots[i]);
+        if((slots[i] < 0 || table.tries(slots[i]) == 0) && rand.nextInt(++untried) == 0) chosen = i;
+      }
+      if(chosen != -1) expanded = true;
+      else chosen = pickChild(table, count);
+
+      pathPlayer[depth] = p;
+      pathSlot[depth] = slots[chosen];
+      pathKey[depth] = info ^ TranspositionTable.actionHash(moves[chosen]);
+      depth++;
+      determ.playTurn(PseudoState.keyToAction(moves[chosen], p));
+    }
+    int winner = determ.roundOver() ? determ.roundWinner() : determ.playOutWinner();
+    for(int i = 0; i < depth; i++){
+      tables[pathPlayer[i]].update(pathSlot[i], pathKey[i], winner == pathPlayer[i] ? 1 : 0);
+    }
+  }
+
+  // Choose among the legal actions at the current step with the tree policy
+  // The actions' tries together stand in for the parent's, which the table does not hold
+  private int pickChild(StatsTable table, int count){
+    int parentTries = 0;
+    for(int i = 0; i < count; i++) parentTries += table.tries(slots[i]);
+    int best = 0;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for(int i = 0; i < count; i++){
+      double score = policy.score(table.wins(slots[i]), table.tries(slots[i]), parentTries, table.available(slots[i]), count, expConst);
+      if(score > bestScore){
+        best = i;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+}
+
+/**
+ * A bounded open addressing table of win, try and availability counts, stored in primitive arrays.
+ * Each key may sit in one of a few consecutive slots; when they are all taken the least tried
+ * entry is evicted.
+ */
+class StatsTable {
+  private static final int PROBES = 4;
+
+  private final long[] keys; // 0 marks an empty slot
+  private final int[] wins;
+  private final int[] tries;
+  private final int[] avail;
+  private final int mask;
+
+  // Construct a table with room for 2^bits entries
+  public StatsTable(int bits){
+    keys = new long[1 << bits];
+    wins = new int[1 << bits];
+    tries = new int[1 << bits];
+    avail = new int[1 << bits];
+    mask = (1 << bits) - 1;
+  }
+
+  private static long nonZero(long key){ return key == 0 ? 1 : key; }
+
+  // The slot holding key, claiming one if needed
+  public int slot(long key){
+    return slot(key, null, 0);
+  }
+
+  // The slot holding key, claiming one if needed but never one of the first claimedCount in claimed.
+  // -1 if every probed slot is one of those
+  public int slot(long key, int[] claimed, int claimedCount){
+    key = nonZero(key);
+    int base = (int) key & mask;
+    int victim = -1;
+    for(int i = 0; i < PROBES; i++){
+      int s = (base + i) & mask;
+      if(keys[s] == key) return s;
+      if(keys[s] == 0){
+        victim = s;
+        break;
+      }
+      if((victim == -1 || tries[s] < tries[victim]) && !contains(claimed, claimedCount, s)) victim = s;
+    }
+    if(victim == -1) return -1;
+    keys[victim] = key;
+    wins[victim] = 0;
+    tries[victim] = 0;
+    avail[victim] = 0;
+    return victim;
+  }
+
+  private static boolean contains(int[] slots, int count, int slot){
+    for(int i = 0; i < count; i++) if(slots[i] == slot) return true;
+    return false;
+  }
+
+  // The slot holding key, or -1 if it is not in the table
+  public int find(long key){
+    key = nonZero(key);
+    int base = (int) key & mask;
+    for(int i = 0; i < PROBES; i++){
+      int s = (base + i) & mask;
+      if(keys[s] == key) return s;
+    }
+    return -1;
+  }
+
+  public int wins(int slot){ return wins[slot]; }
+
+  public int tries(int slot){ return tries[slot]; }
+
+  public int available(int slot){ return avail[slot]; }
+
+  public void seen(int slot){ avail[slot]++; }
+
+  // Record a simulation, unless the slot has since been given to another key
+  public void update(int slot, long key, int win){
+    if(slot < 0 || keys[slot] != nonZero(key)) return;
+    wins[slot] += win;
+    tries[slot]++;
+  }
+}
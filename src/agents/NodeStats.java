@@ -0,0 +1,60 @@
+package agents;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Win, simulation and availability counts for a node in the search.
+ * Wins and tries are packed into one long so that a simulation is recorded with a single
+ * atomic add and readers never see a win without its try.
+ * Threads descending through a node add a virtual loss (a try without a win) so that
+ * others are steered elsewhere until the result comes back.
+ */
+class NodeStats {
+  private static final VarHandle COUNTS;
+  private static final VarHandle AVAILABLE;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      COUNTS = lookup.findVarHandle(NodeStats.class, "counts", long.class);
+      AVAILABLE = lookup.findVarHandle(NodeStats.class, "availability", int.class);
+    } catch(ReflectiveOperationException e){
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  final long key; // Information set these statistics belong to, 0 if private
+  private volatile long counts; // Tries in the high 32 bits, wins in the low 32 bits
+  private volatile int availability; // Number of times this node has been considered for selection
+
+  public NodeStats(){
+    this(0);
+  }
+
+  public NodeStats(long key){
+    this.key = key;
+  }
+
+  public int getWins(){return (int) counts;}
+
+  public int getTries(){return (int) (counts >>> 32);}
+
+  public int getAvailable(){return availability;}
+
+  public void seen(){ AVAILABLE.getAndAdd(this, 1);}
+
+  public void update(int win){
+    COUNTS.getAndAdd(this, (1L << 32) + win);
+  }
+
+  // Count a try in advance while a simulation through this node is under way
+  public void addVirtualLoss(){
+    COUNTS.getAndAdd(this, 1L << 32);
+  }
+
+  // Complete a try counted by addVirtualLoss
+  public void resolveVirtualLoss(int win){
+    COUNTS.getAndAdd(this, (long) win);
+  }
+}
@@ -0,0 +1,180 @@
+package agents;
+import loveletter.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.util.Random;
+
+/**
+ * Precomputed first moves of a round.
+ * Before anyone has discarded, a player's information set is just the card in their hand and
+ * the card they drew, so the first move of every round is one of at most 64 positions. The book
+ * holds a move for each, found offline with a long search, and answers them with an array read.
+ * Targets are stored relative to the mover, so one book serves every seat.
+ * Build a book with
+ * <pre>java agents.OpeningBook [file] [iterations] [searches] [players] [ruleset]</pre>
+ * and have default GodV2s play from it by running with -Dloveletter.book=file.
+ * A book is saved as a magic number, the number of players, the number of each card in the deck it
+ * was built for, and one short per (hand, drawn) pair, 0 where there is no entry. It only answers
+ * games with that many players and that deck. Books saved before the deck was stored are classic.
+ */
+public class OpeningBook {
+  private static final int MAGIC = 0x4C4C4F43; // "LLOC"
+  private static final int CLASSIC_MAGIC = 0x4C4C4F42; // "LLOB", books from before the deck was stored
+  /** Where main writes a book by default */
+  public static final String DEFAULT_FILE = "opening.book";
+  /** The system property naming the book default GodV2s play from, unset for none */
+  public static final String PROPERTY = "loveletter.book";
+
+  private static OpeningBook standard;
+  private static boolean standardLoaded;
+
+  private final int numPlayers;
+  private final int[] counts; // The deck the book was built for, cards by value - 1
+  private final short[] moves; // Indexed by (hand - 1) * 8 + drawn - 1, see PseudoState.actionKey with a relative target
+
+  // Construct an empty book for classic games of numPlayers
+  public OpeningBook(int numPlayers){
+    this(numPlayers, Ruleset.CLASSIC);
+  }
+
+  // Construct an empty book for games of numPlayers with the ruleset's deck
+  public OpeningBook(int numPlayers, Ruleset rules){
+    this.numPlayers = numPlayers;
+    counts = new int[8];
+    for(int v = 1; v <= 8; v++) counts[v - 1] = rules.count(v);
+    moves = new short[64];
+  }
+
+  /**
+   * The book named by the PROPERTY system property, loaded once.
+   * @return the shared default book, or null if the property is unset or the file cannot be read
+   */
+  public static synchronized OpeningBook standard(){
+    if(!standardLoaded){
+      standardLoaded = true;
+      String path = System.getProperty(PROPERTY);
+      if(path != null){
+        try {
+          standard = load(path);
+          if(Log.info()) Log.println("Loaded opening book " + path);
+        } catch(IOException e){
+          if(Log.warn()) Log.println("Could not read opening book: " + e);
+        }
+      }
+    }
+    return standard;
+  }
+
+  /**
+   * @param path the file to read
+   * @return the book saved there
+   * @throws IOException if the file cannot be read or is not a book
+   */
+  public static OpeningBook load(String path) throws IOException {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))){
+      int magic = in.readInt();
+      if(magic != MAGIC && magic != CLASSIC_MAGIC) throw new IOException(path + " is not an opening book");
+      OpeningBook book = new OpeningBook(in.readByte());
+      if(magic == MAGIC) for(int i = 0; i < book.counts.length; i++) book.counts[i] = in.readByte();
+      for(int i = 0; i < book.moves.length; i++) book.moves[i] = in.readShort();
+      return book;
+    }
+  }
+
+  /**
+   * @param path the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void save(String path) throws IOException {
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))){
+      out.writeInt(MAGIC);
+      out.writeByte(numPlayers);
+      for(int c : counts) out.writeByte(c);
+      for(short move : moves) out.writeShort(move);
+    }
+  }
+
+  /**
+   * The book move for the player to move in state, if it is the first move of the round.
+   * @param state the player's view of the game
+   * @param drawn the card the player drew
+   * @return the move, or null if the book has none for this position
+   */
+  public Action lookup(State state, Card drawn){
+    if(state.numPlayers() != numPlayers || !builtFor(state.ruleset())) return null;
+    for(int p = 0; p < numPlayers; p++) if(state.discardCount(p) > 0) return null;
+    int mover = state.getPlayerIndex();
+    Card hand = state.getCard(mover);
+    int move = moves[index(hand.value(), drawn.value())];
+    if(move == 0) return null;
+    int rel = ((move >> 4) & 0xF) - 1;
+    int target = rel == -1 ? -1 : (mover + rel) % numPlayers;
+    try {
+      Action act = PseudoState.keyToAction(PseudoState.actionKey(PseudoState.keyCard(move), target, move & 0xF), mover);
+      return state.legalAction(act, drawn) ? act : null;
+    } catch(IllegalActionException e){
+      return null;
+    }
+  }
+
+  // Whether the book was built for the ruleset's deck
+  private boolean builtFor(Ruleset rules){
+    for(int v = 1; v <= 8; v++) if(rules.count(v) != counts[v - 1]) return false;
+    return true;
+  }
+
+  // Record a move found for the mover at seat 0, holding hand and drawing drawn
+  void put(int hand, int drawn, int actionKey){
+    moves[index(hand, drawn)] = (short) actionKey;
+  }
+
+  private static int index(int hand, int drawn){ return (hand - 1) * 8 + drawn - 1; }
+
+  /**
+   * Builds a book by searching every first move position and saves it.
+   * Each position is searched several times over freshly sampled deals and the most chosen move kept.
+   * @param args the file to write, iterations per search, searches per position, the number of players and the ruleset
+   * @throws Exception if a search fails or the book cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    String path = args.length > 0 ? args[0] : DEFAULT_FILE;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+    int searches = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int numPlayers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+    Ruleset rules = args.length > 4 ? Ruleset.forName(args[4]) : Ruleset.CLASSIC;
+    Log.setLevel(Log.Level.WARN);
+    Random rand = new Random(0);
+    OpeningBook book = new OpeningBook(numPlayers, rules);
+    Agent[] agents = new Agent[numPlayers];
+    for(int p = 0; p < numPlayers; p++) agents[p] = new RandomAgent();
+    int[] votes = new int[1 << 12];
+    for(int hand = 1; hand <= 8; hand++){
+      for(int drawn = 1; drawn <= 8; drawn++){
+        if(hand == drawn && rules.count(hand) < 2) continue;
+        java.util.Arrays.fill(votes, 0);
+        int best = 0;
+        for(int s = 0; s < searches; s++){
+          // Deal until seat 0 holds the pair; the search only sees seat 0's view
+          State game;
+          Card card;
+          do {
+            game = new State(rand, agents, rules);
+            card = game.drawCard();
+          } while(game.getCard(0).value() != hand || card.value() != drawn);
+          Action act = new MOISMCTS(4, iterations, 0.3, game.playerState(0), card, 0).search();
+          int key = PseudoState.actionKey(act.card().value(), act.target(), act.guess() == null ? 0 : act.guess().value());
+          if(++votes[key] > votes[best]) best = key;
+        }
+        book.put(hand, drawn, best);
+        System.out.println(Card.values()[hand - 1] + " + " + Card.values()[drawn - 1] + ": " + PseudoState.keyToAction(best, 0));
+      }
+    }
+    book.save(path);
+  }
+}
@@ -0,0 +1,401 @@
+package agents;
+import loveletter.*;
+
+import java.util.Random;
+
+//                                        _   
+//             /\                        | |  
+//            /  \    __ _   ___  _ __  | |_ 
+//          / /\ \  / _` | / _ \| '_ \ | __|
+//         / ____ \| (_| ||  __/| | | || |_ 
+//       /_/    \_\\__, | \___||_| |_| \__|
+//                  __/ |                  
+//                 |___/                           
+
+class PseudoAgent {
+
+  private Random random;
+  private PseudoState current;
+  private int agentIndex;
+  private boolean[] availableTargets;
+  private double[][] cardProb;
+  private int[] unseenCards;
+
+  public PseudoAgent(){
+    this(new Random());
+  }
+
+  public PseudoAgent(Random random){
+    this.random  = random;
+    availableTargets = new boolean[0];
+    cardProb = new double[0][8];
+    unseenCards = new int[8];
+    reset(Ruleset.CLASSIC);
+  }
+
+  public String toString(){return "NotSoRandom";}
+
+  // Forget the last round's deductions, so every opponent's card is as likely as the ruleset's deck makes it.
+  // Pooled agents are reset before each new root, since seeing the known cards again only counts them down
+  public void reset(Ruleset rules){
+    for(int i = 0; i < 8; i++) unseenCards[i] = rules.count(i + 1);
+    updateProbabilities();
+  }
+
+  // The cards of each value this agent has not yet seen in an opponent's hand
+  int unseen(int value){
+    return unseenCards[value - 1];
+  }
+
+  public void newRound(PseudoState start){
+    current = start;
+    agentIndex = current.getPlayerIndex();
+    fit();
+    updateKnown();
+    getAvailableTargets();
+  }
+
+  public void see(Action act, PseudoState results){
+    current = results;
+    updateKnown();
+    getAvailableTargets();
+  }
+
+  // Look at a state as the given player, who may be any player in a full state.
+  // playCard brings the agent's knowledge up to date, so nothing else is needed before it
+  public void observe(PseudoState state, int playerIndex){
+    current = state;
+    agentIndex = playerIndex;
+    fit();
+  }
+
+  // Size the per-player arrays to the current table, keeping them when they already fit
+  private void fit(){
+    int numPlayers = current.numPlayers();
+    if(availableTargets.length == numPlayers) return;
+    availableTargets = new boolean[numPlayers];
+    cardProb = new double[numPlayers][8];
+    updateProbabilities();
+  }
+
+  private void updateKnown(){
+    for(int i = 0; i < availableTargets.length; i++){
+      if(i == agentIndex) continue;
+      PseudoCard card = current.getCard(agentIndex, i);
+      if(card != null && cardProb[i][card.value()-1] != 1.0){
+        for(int j = 0; j < 8; j++) cardProb[i][j] = 0.0;
+        cardProb[i][card.value()-1] = 1.0;
+        unseenCards[card.value()-1]--;
+      }
+    }
+  }
+
+  private void updateProbabilities(){
+    int totalUnseenCards = 0;
+    for(int i = 0; i < 8; i++){
+      totalUnseenCards += unseenCards[i];
+    }
+    for(int i = 0; i < 8; i++){
+      for(int j = 0; j < availableTargets.length; j++){
+        if(j == agentIndex) continue;
+        cardProb[j][i] = (double)unseenCards[i] / (double)totalUnseenCards;
+      }
+    }
+  }
+
+  private void getAvailableTargets(){
+    int targets = current.targetable(agentIndex);
+    for(int i = 0; i < availableTargets.length; i++) availableTargets[i] = (targets >> i & 1) != 0;
+  }
+
+  private boolean targetsAvailable(){
+    return current.targetable(agentIndex) != 0;
+  }
+
+  public PseudoCard pickRandomCard(PseudoCard c, PseudoCard d){
+    if(random.nextDouble() < 0.5) return c;
+    else return d;
+  }
+
+  public int getRandomTarget(PseudoCard c){
+    int target;
+    switch(c){
+      case GUARD:
+        target = getTarget();
+        break;
+      case PRIEST:
+        target = getTarget();
+        break;
+      case BARON:  
+        target = getTarget();
+        break;
+      case PRINCE:  
+        target = getRandomPrinceTarget();
+        break;
+      case KING:
+        target = getTarget();
+        break;
+      default:
+        target = -1; // Princess, Handmaid and Countess don't target
+    }
+    return target;
+  }
+
+  private int getTarget(){
+    getAvailableTargets();
+    
+    // Try and find someone available
+    int targets = current.targetable(agentIndex);
+    if(targets != 0) return Integer.numberOfTrailingZeros(targets);
+    // If not try and find someone not eliminated
+    return fallbackTarget();
+  }
+
+  // An opponent still in the round, for when every one is protected and the rules allow any of them, else the agent itself
+  private int fallbackTarget(){
+    int targets = current.remaining() & ~(1 << agentIndex);
+    if(targets != 0) return Integer.numberOfTrailingZeros(targets);
+    if(Log.debug()) Log.println("Get target has failed");
+    return agentIndex;
+  }
+
+  private int getRandomPrinceTarget(){
+    int i = random.nextInt(availableTargets.length - 1);
+    int j = agentIndex;
+    while(i >= 0){
+      for(int k = 0; k < availableTargets.length; k++){
+        if(availableTargets[k]){
+          j = k;
+          i--;
+        }
+        if(i == 0) break;
+      }
+      i--;
+    }
+    return j;
+  }
+
+  public int getBestTarget(PseudoCard c, PseudoCard otherCard){
+    int target;
+    switch(c){
+      case GUARD:
+        target = getBestGuardTarget();
+        break;
+      case PRIEST:
+        target = getBestPriestTarget();
+        break;
+      case BARON:  
+        target = getBestBaronTarget(otherCard.value());
+        break;
+      case PRINCE:  
+        target = getBestPrinceTarget();
+        break;
+      case KING:
+        target = getBestKingTarget(otherCard.value());
+        break;
+      default:
+        target = -1; // Princess, Handmaid and Countess don't target
+    }
+    return target;
+  }
+
+  private int getBestGuardTarget(){
+    return getBestGuardMove()[0];
+  }
+
+  private int getBestGuardCard(){
+    return getBestGuardMove()[1];
+  }
+
+  private int[] getBestGuardMove(){
+    int[] guess = new int[2];
+    double prob = 0;
+    for(int i = 0; i < availableTargets.length; i++){
+      if(!availableTargets[i]) continue;
+      for(int j = 1; j < 8; j++){
+        if(cardProb[i][j] >= prob) {
+          prob = cardProb[i][j];
+          guess[0] = i;
+          guess[1] = j+1;
+        }
+      }
+    }
+    if(prob == 0 && !targetsAvailable()) {
+      guess[0] = fallbackTarget();
+      guess[1] = 8;
+    }
+    else if(prob == 0) for(int i = 0; i < availableTargets.length; i++) if(availableTargets[i]) {
+      guess[0] = i;
+      guess[1] = 8;
+    }
+    return guess;
+  }
+
+  private int getBestPriestTarget(){
+    int target = fallbackTarget();
+    double prob = 1;
+    for(int i = 0; i < availableTargets.length; i++){
+      if(!availableTargets[i]) continue;
+      for(int j = 0; j < 8; j++){
+        if(cardProb[i][j] == 0) continue;
+        else if(cardProb[i][j] <= prob) {
+          target = i;
+          prob = cardProb[i][j];
+        }
+      }
+    }
+    if(prob == 1 && !targetsAvailable()) target = fallbackTarget();
+    else if(prob == 1) for(int i = 0; i < availableTargets.length; i++) if(availableTargets[i]) {
+      target = i;
+    }
+    return target;
+  }
+
+  private int getBestBaronTarget(int cardVal){
+    int target = fallbackTarget();
+    double prob = 0.3;
+    int lowestCard = 9;
+    for(int i = 0; i < availableTargets.length; i++){
+      if(!availableTargets[i]) continue;
+      for(int j = 0; j < 8; j++){
+        if(cardProb[i][j] >= prob && j + 1 <= lowestCard) {
+          target = i;
+          lowestCard = j + 1;
+          prob = cardProb[i][j];
+        }
+        else if(cardProb[i][j] == 1 && j + 1 < cardVal) {
+          target = i;
+          lowestCard = 0;
+        }
+      }
+    }
+    if(lowestCard == 9 && !targetsAvailable()) target = fallbackTarget();
+    else if(lowestCard == 9) for(int i = 0; i < availableTargets.length; i++) if(availableTargets[i]) {
+      target = i;
+    }
+    return target;
+  }
+
+  private int getBestPrinceTarget(){
+     int target = agentIndex;
+    double prob = 0;
+    int highestCard = 0;
+    for(int i = 0; i < availableTargets.length; i++){
+      if(!availableTargets[i]) continue;
+      for(int j = 0; j < 8; j++){
+        if(cardProb[i][j] >= prob && j + 1 >= highestCard) {
+          target = i;
+          highestCard = j + 1;
+          prob = cardProb[i][j];
+        }
+      }
+    }
+    if(highestCard == 0 && !targetsAvailable()) target = agentIndex;
+    else if(highestCard == 0) for(int i = 0; i < availableTargets.length; i++) if(availableTargets[i]) {
+      target = i;
+    }
+    return target;
+  }
+
+  private int getBestKingTarget(int cardVal){
+    int target = fallbackTarget();
+    double prob = 0.6;
+    int highestCard = 0;
+    for(int i = 0; i < availableTargets.length; i++){
+      if(!availableTargets[i]) continue;
+      for(int j = 0; j < 8; j++){
+        if(cardProb[i][j] >= prob && j + 1 >= highestCard) {
+          target = i;
+          highestCard = j + 1;
+          prob = cardProb[i][j];
+        }
+      }
+    }
+    if(highestCard == 0 && !targetsAvailable()) target = fallbackTarget();
+    else if(highestCard == 0) for(int i = 0; i < availableTargets.length; i++) if(availableTargets[i]) {
+      target = i;
+    }
+    return target;
+  }
+
+  public Action playCard(PseudoCard c){
+    Action act = null;
+    PseudoCard otherCard = current.getCard(agentIndex, agentIndex);
+    updateKnown();
+    getAvailableTargets();
+    int target = getBestTarget(c, otherCard);
+    // int target = getRandomTarget(c);
+    try{
+      switch(c){
+        case GUARD:
+          act = Action.playGuard(agentIndex, target, Card.values()[getBestGuardCard()-1]);
+          // act = Action.playGuard(agentIndex, target, Card.values()[random.nextInt(7)+1]);
+          break;
+        case PRIEST:
+          act = Action.playPriest(agentIndex, target);
+          break;
+        case BARON:  
+          act = Action.playBaron(agentIndex, target);
+          break;
+        case HANDMAID:
+          act = Action.playHandmaid(agentIndex);
+          break;
+        case PRINCE:  
+          act = Action.playPrince(agentIndex, target);
+          break;
+        case KING:
+          act = Action.playKing(agentIndex, target);
+          break;
+        case COUNTESS:
+          act = Action.playCountess(agentIndex);
+          break;
+        case PRINCESS:
+          act = Action.playPrincess(agentIndex);
+          break;
+        default:
+          act = null;
+      }
+      if(act == null) throw new IllegalActionException("No legal action found");
+    }catch(IllegalActionException e){/*do nothing*/}
+    return act;
+  }
+
+  public Action playRandomCard(PseudoCard c){
+    Action act = null;
+    PseudoCard held = current.getCard(agentIndex);
+    // The card comes from the pair table, so only the target is retried
+    int only = HandPairs.only(held.value(), c.value());
+    PseudoCard play = only == c.value() ? c : only == held.value() ? held : random.nextDouble() < 0.5 ? c : held;
+    while(!current.legalAction(act, c)){
+      int target = random.nextInt(availableTargets.length);
+      try{
+        switch(play){
+          case GUARD:
+            act = Action.playGuard(agentIndex, target, Card.values()[random.nextInt(7)+1]);
+            break;
+          case PRIEST:
+            act = Action.playPriest(agentIndex, target);
+            break;
+          case BARON:  
+            act = Action.playBaron(agentIndex, target);
+            break;
+          case HANDMAID:
+            act = Action.playHandmaid(agentIndex);
+            break;
+          case PRINCE:  
+            act = Action.playPrince(agentIndex, target);
+            break;
+          case KING:
+            act = Action.playKing(agentIndex, target);
+            break;
+          case COUNTESS:
+            act = Action.playCountess(agentIndex);
+            break;
+          default://the pair table only picks the princess when both cards are princesses
+            act = Action.playPrincess(agentIndex);
+        }
+      }catch(IllegalActionException e){/*do nothing*/}
+    }
+    return act;
+  }
+}
@@ -0,0 +1,145 @@
+package agents;
+import loveletter.*;
+
+import java.util.Random;
+
+//             _____                 _ 
+//           / ____|               | |
+//          | |      __ _  _ __  __| |
+//         | |     / _` || '__|/ _` |
+//         | |____| (_| || |  | (_| |
+//         \_____|\__,_||_|   \__,_|
+//
+//         Recycled from card class  
+
+enum PseudoCard {
+
+  GUARD(1,"Guard",5),
+  PRIEST(2,"Priest",2),
+  BARON(3,"Baron",2),
+  HANDMAID(4,"Handmaid",2),
+  PRINCE(5,"Prince",2),
+  KING(6,"King",1),
+  COUNTESS(7,"Countess",1),
+  PRINCESS(8,"Princess",1);
+
+  private int value; //numerical value of card
+  private String name; //String description of card
+  private int count; //number of cards in the deck
+
+  private PseudoCard(int value, String name, int count){
+    this.value = value;
+    this.name = name;
+    this.count = count;
+  }
+
+  public int value(){return value;}
+
+  public String toString(){return name;}
+  
+  public int count(){return count;}
+  
+  public static PseudoCard[] constructDeck(Random rand, PseudoCard[] discards){
+    return constructDeck(rand, discards, Ruleset.CLASSIC);
+  }
+
+  // Deal the ruleset's deck with the given cards first, in order, and the rest shuffled after them
+  public static PseudoCard[] constructDeck(Random rand, PseudoCard[] discards, Ruleset rules){
+    PseudoCard[] deck = new PseudoCard[rules.deckSize()];
+    int deckIndex = 0;
+    while(deckIndex < deck.length && discards[deckIndex] != null) {
+      deck[deckIndex] = discards[deckIndex];
+      deckIndex++;
+    }
+    PseudoCard[] deckLeft = new PseudoCard[deck.length-deckIndex];
+    int j = 0;
+    for(PseudoCard c: PseudoCard.values()) {
+      int countLeft = rules.count(c.value());
+      for(int i = 0; i<deckIndex; i++){
+        if(deck[i].value() == c.value()) countLeft--;
+      }
+      for(int i = 0; i<countLeft; i++){
+        deckLeft[j++] = c;
+      }
+    }
+    for(int i = 0; i<50; i++){//make two hundred random swaps of cards
+      int index1 = rand.nextInt(deckLeft.length);
+      int index2 = rand.nextInt(deckLeft.length);
+      PseudoCard c = deckLeft[index1];
+      deckLeft[index1]=deckLeft[index2];
+      deckLeft[index2]=c;
+    }
+    for(int i = 0; i<deckLeft.length; i++) deck[i + deckIndex] = deckLeft[i];
+    return deck;
+  }
+
+  public static PseudoCard[] constructDeck(PseudoCard[] discards){
+    return constructDeck(new java.util.Random(), discards);
+  }
+
+  public static PseudoCard convertToPseudoCard(Card c){
+    PseudoCard convertedCard;
+    switch(c){
+      case GUARD:
+        convertedCard = PseudoCard.GUARD;
+        break;
+      case PRIEST:
+        convertedCard = PseudoCard.PRIEST;
+        break;
+      case BARON:
+        convertedCard = PseudoCard.BARON;
+        break;
+      case HANDMAID:
+        convertedCard = PseudoCard.HANDMAID;
+        break;
+      case PRINCE:
+        convertedCard = PseudoCard.PRINCE;
+        break;
+      case KING:
+        convertedCard = PseudoCard.KING;
+        break;
+      case COUNTESS:  
+        convertedCard = PseudoCard.COUNTESS;
+        break;
+      case PRINCESS:
+        convertedCard = PseudoCard.PRINCESS;
+        break;
+      default: 
+        return null;
+    }
+    return convertedCard;
+  }
+
+  public static Card convertFromPseudoCard(PseudoCard c){
+    Card convertedCard;
+    switch(c){
+      case GUARD:
+        convertedCard = Card.GUARD;
+        break;
+      case PRIEST:
+        convertedCard = Card.PRIEST;
+        break;
+      case BARON:
+        convertedCard = Card.BARON;
+        break;
+      case HANDMAID:
+        convertedCard = Card.HANDMAID;
+        break;
+      case PRINCE:
+        convertedCard = Card.PRINCE;
+        break;
+      case KING:
+        convertedCard = Card.KING;
+        break;
+      case COUNTESS:  
+        convertedCard = Card.COUNTESS;
+        break;
+      case PRINCESS:
+        convertedCard = Card.PRINCESS;
+        break;
+      default: 
+        return null;
+    }
+    return convertedCard;
+  }
+}
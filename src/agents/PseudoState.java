@@ -0,0 +1,694 @@
+package agents;
+import loveletter.*;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+//            _____   _          _        
+//          / ____| | |        | |       
+//         | (___  | |_  __ _ | |_  ___ 
+//         \___ \ | __|/ _` || __|/ _ \
+//         ____) || |_| (_| || |_|  __/
+//        |_____/ \__|\__,_| \__|\___|
+//                     
+//        Recycled from state class
+
+class PseudoState implements Cloneable{
+  static final int MAX_ACTIONS = 64; // Most legal actions a turn can have: every Guard guess at seven targets plus the other card
+
+  private int player;
+  private int numPlayers;
+  private PseudoCard[][] discards;
+  private int[] discardCount;
+  private PseudoCard[] hand;
+  private PseudoCard[] deck;
+  private int[] top;
+  private boolean[][] known;
+  private int[] alive; // Bitmask of players still in the round, in a one element array so player views share it
+  private int[] handmaid; // Bitmask of players protected by the Handmaid, shared the same way
+  private int[] nextPlayer;
+  private PseudoAgent[] randomAgents;
+  private PseudoCard newCard;
+  private Ruleset rules; // The deck in play, shared with the State this was copied from
+  private int cards; // The number of cards in that deck
+  private PseudoState[] views; // Player views, made once when this state is kept as a rollout scratch state
+  private boolean describe; // Whether update builds a description of each action, off so searches build no strings
+
+  public PseudoState(Random random, State startState, PseudoAgent[] randomAgents, Card c) {
+    newCard = PseudoCard.convertToPseudoCard(c);
+    initRound(random, startState, randomAgents);
+  }
+
+  // Construct one particular deal: the cards the observer has not seen go to the unknown hands in seat order, then the deck
+  public PseudoState(State startState, PseudoAgent[] randomAgents, Card c, PseudoCard[] unseen) {
+    newCard = PseudoCard.convertToPseudoCard(c);
+    initRound(null, startState, randomAgents, unseen);
+  }
+
+  public PseudoState(State startState, Card c) {
+    newCard = PseudoCard.convertToPseudoCard(c);
+    Random random = new Random();
+    PseudoAgent[] randomAgents = new PseudoAgent[startState.numPlayers()];
+    for(int i = 0; i < randomAgents.length; i++){
+      randomAgents[i] = new PseudoAgent();
+      randomAgents[i].reset(startState.ruleset());
+    }
+    initRound(random, startState, randomAgents);
+  }
+
+  public void initRound(Random random, State startState, PseudoAgent[] randomAgents) {
+    initRound(random, startState, randomAgents, null);
+  }
+
+  // Deal the unseen cards in the given order, or shuffled if unseen is null
+  private void initRound(Random random, State startState, PseudoAgent[] randomAgents, PseudoCard[] unseen) {
+    this.randomAgents = randomAgents;
+    player = -1;
+    numPlayers = startState.numPlayers();
+    rules = startState.ruleset();
+    cards = rules.deckSize();
+    PseudoCard[] discardsStack = new PseudoCard[cards];
+    discards = new PseudoCard[numPlayers][cards];
+    discardCount = new int[numPlayers];
+    int numDiscards = 0;
+    for(int i = 0; i < numPlayers; i++){
+      Iterator<Card> discard = startState.getDiscards(i);
+      int j = 0;
+      while(discard.hasNext()){
+        Card next = discard.next();
+        PseudoCard convertedCard = PseudoCard.convertToPseudoCard(next);
+        discards[i][j] = convertedCard;
+        discardsStack[numDiscards] = convertedCard;
+        j++;
+        numDiscards++;
+        discardCount[i]++;
+      }
+    }
+    discardsStack[numDiscards++] = newCard;
+    // Hands the observer knows, always including their own, are kept; the rest are dealt from the shuffled remainder
+    int fixed = numDiscards;
+    for(int i = 0; i < numPlayers; i++){
+      if(!startState.eliminated(i) && startState.getCard(i) != null)
+        discardsStack[numDiscards++] = PseudoCard.convertToPseudoCard(startState.getCard(i));
+    }
+    if(unseen == null) deck = PseudoCard.constructDeck(random, discardsStack, rules);
+    else {
+      deck = Arrays.copyOf(discardsStack, cards);
+      System.arraycopy(unseen, 0, deck, numDiscards, unseen.length);
+    }
+    hand = new PseudoCard[numPlayers];
+    alive = new int[]{startState.remaining()};
+    handmaid = new int[1];
+    known = new boolean[numPlayers][numPlayers];
+    int observer = startState.getPlayerIndex();
+    top = new int[1];
+    top[0] = numDiscards;
+    for(int i = 0; i<numPlayers; i++){
+      if(startState.eliminated(i)) hand[i] = null;
+      else {
+        if(startState.getCard(i) != null){
+          hand[i] = this.deck[fixed++];
+          known[observer][i] = true;
+        }
+        else hand[i] = this.deck[top[0]++];
+        if(startState.handmaid(i)) handmaid[0] |= 1 << i;
+      }
+      known[i][i] = true;
+    }
+    nextPlayer=new int[1];
+    nextPlayer[0] = startState.nextPlayer();
+  }
+
+  public void displayState(){
+    System.out.println("player: " + player);
+    System.out.println("discards: " + Arrays.deepToString(discards));
+    System.out.println("discardCount: " + Arrays.toString(discardCount));
+    System.out.println("hand: " + Arrays.toString(hand));
+    System.out.println("deck: " + Arrays.toString(deck));
+    System.out.println("top: " + Arrays.toString(top));
+    System.out.println("known: " + Arrays.deepToString(known));
+    System.out.println("alive: " + Integer.toBinaryString(alive[0]));
+    System.out.println("handmaid: " + Integer.toBinaryString(handmaid[0]));
+    System.out.println("nextPlayer: " + Arrays.toString(nextPlayer));
+    System.out.println("Agents: " + Arrays.toString(randomAgents));
+  }
+
+  public Boolean playOut(int playerIndex){
+    int winner = playOutWinner();
+    if(winner == -2) return null;
+    return winner == playerIndex;
+  }
+
+  // Play the round out with random agents and return the winner, or -2 if something went wrong
+  public int playOutWinner(){
+    return playOutWinner(randomAgents);
+  }
+
+  // Play the round out with the given agents, so that search threads need not share them
+  public int playOutWinner(PseudoAgent[] randomAgents){
+    return cloneState().playRound(randomAgents);
+  }
+
+  // Play the round out in scratch, a state the caller keeps between rollouts and which is overwritten with this one,
+  // so that a rollout makes no new states
+  public int playOutWinner(PseudoAgent[] randomAgents, PseudoState scratch){
+    if(!scratch.copyFrom(this)) return playOutWinner(randomAgents);
+    return scratch.playRound(randomAgents);
+  }
+
+  // Play this state to the end of the round and return the winner, or -2 if something went wrong
+  private int playRound(PseudoAgent[] randomAgents){
+    int winner=0;
+    int turns = 0;
+    PseudoState gameState = this;
+    try{
+      // Views share this state's arrays, so once made they follow it through every rollout
+      if(views == null){
+        views = new PseudoState[numPlayers];
+        for(int i = 0; i<numPlayers; i++) views[i] = playerState(i);
+      }
+      PseudoState[] playerStates = views;
+      for(int i = 0; i<numPlayers; i++) randomAgents[i].newRound(playerStates[i]);
+      // Play the round
+      while(!gameState.roundOver()){
+        PseudoCard topCard = gameState.drawCard(); 
+        Action act = randomAgents[gameState.nextPlayer()].playRandomCard(topCard);
+        try{
+          gameState.update(act,topCard);
+        } catch(IllegalActionException e){ // Hopefully this shouldn't happen
+        if(Log.warn()){
+          Log.println(e);
+          Log.println("Stopping...");
+        }
+      }
+      for(int p = 0; p<numPlayers; p++) randomAgents[p].see(act,playerStates[p]);
+      turns++;
+    }
+    Metrics.ROLLOUT_LENGTH.record(turns);
+    winner = gameState.roundWinner();
+      return winner;
+    }catch(IllegalActionException e){
+      if(Log.warn()) Log.println("Something has gone wrong: " + e);
+      return -2;
+    }
+  }
+
+  // Overwrite this state with a copy of other, keeping this state's arrays. False if their shapes differ
+  private boolean copyFrom(PseudoState other){
+    if(player != -1 || numPlayers != other.numPlayers || deck.length != other.deck.length) return false;
+    for(int i = 0; i < numPlayers; i++){
+      System.arraycopy(other.discards[i], 0, discards[i], 0, other.discardCount[i]);
+      System.arraycopy(other.known[i], 0, known[i], 0, numPlayers);
+    }
+    System.arraycopy(other.discardCount, 0, discardCount, 0, numPlayers);
+    System.arraycopy(other.hand, 0, hand, 0, numPlayers);
+    System.arraycopy(other.deck, 0, deck, 0, deck.length);
+    top[0] = other.top[0];
+    alive[0] = other.alive[0];
+    handmaid[0] = other.handmaid[0];
+    nextPlayer[0] = other.nextPlayer[0];
+    randomAgents = other.randomAgents;
+    newCard = other.newCard;
+    rules = other.rules;
+    cards = other.cards;
+    return true;
+  }
+
+  @Override
+  protected Object clone() throws CloneNotSupportedException {
+    PseudoState cloned = (PseudoState)super.clone();
+    cloned.discards = (PseudoCard[][])cloned.discards.clone(); 
+    for(int i = 0; i < cloned.discards.length; i++) cloned.discards[i] = cloned.discards[i].clone();
+    cloned.discardCount = (int[])cloned.discardCount.clone(); 
+    cloned.hand = (PseudoCard[])cloned.hand.clone(); 
+    cloned.deck = (PseudoCard[])cloned.deck.clone(); 
+    cloned.top = (int[])cloned.top.clone(); 
+    cloned.known = (boolean[][])cloned.known.clone(); 
+    for(int i = 0; i < cloned.known.length; i++) cloned.known[i] = cloned.known[i].clone();
+    cloned.alive = cloned.alive.clone();
+    cloned.handmaid = cloned.handmaid.clone();
+    cloned.nextPlayer = (int[])cloned.nextPlayer.clone(); 
+    cloned.views = null; // The original's views see the original's arrays
+    return cloned;
+  }
+
+  public PseudoState cloneState(){
+    try{
+      PseudoState s = (PseudoState)this.clone();
+      return s;
+    }catch(CloneNotSupportedException e){
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  public PseudoState playerState(int player) throws IllegalActionException{
+    if(this.player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
+    if(player<0 || numPlayers<=player) throw new IllegalArgumentException("Player out of range.");
+    try{
+      PseudoState s = (PseudoState)super.clone();
+      s.player = player;
+      return s;
+    }catch(CloneNotSupportedException e){
+      e.printStackTrace();
+      return null;
+    }
+  }
+    
+  private void legalAction(int a, int t, PseudoCard c, PseudoCard drawn) throws IllegalActionException{
+    if(hand[a]!=c && drawn!=c)
+      throw new IllegalActionException("Player does not hold the played card");
+    if(nextPlayer[0]!=a)//it must be the actors turn
+      throw new IllegalActionException("Wrong player in action");
+    if((hand[a]==PseudoCard.COUNTESS || drawn==PseudoCard.COUNTESS) && (c==PseudoCard.KING || c==PseudoCard.PRINCE))//if one of the cards is the countess, a king or prince may not be played.
+      throw new IllegalActionException("Player must play the countess");
+    if(t!=-1){//if this action has a target (1,2,3,5,6 cards)
+      if(eliminated(t)) //you cannot target an eliminated player
+        throw new IllegalActionException("The action's target is already eliminated");
+      if(c==PseudoCard.PRINCE && a==t) return;//a player can always target themselves with the Prince.
+      if(handmaid(t) && (!allHandmaid(a) || c==PseudoCard.PRINCE))//you cannot target a player with the handmaid
+        throw new IllegalActionException("The action's target is protected by the handmaid");
+    } 
+  }
+
+  public boolean legalAction(Action act, PseudoCard drawn){
+    if(act ==null) return false;
+    try{
+      legalAction(act.player(), act.target(), PseudoCard.convertToPseudoCard(act.card()), drawn);
+    }
+    catch(IllegalActionException e){
+      return false;
+    }
+    return true;
+  }
+
+  public PseudoCard drawCard(){
+    return deck[top[0]++];
+  }
+
+  // Plays the next turn in a copy of this state: the mover draws (the root's known card on the first turn) and acts
+  public PseudoState expandTurn(Action act) throws IllegalActionException {
+    PseudoState expanded = cloneState();
+    expanded.playTurn(act);
+    return expanded;
+  }
+
+  // Plays the next turn in this state
+  public void playTurn(Action act) throws IllegalActionException {
+    PseudoCard drawn = newCard != null ? newCard : drawCard();
+    newCard = null;
+    update(act, drawn);
+  }
+
+  // The card the player to move will draw
+  public PseudoCard nextDraw(){
+    return newCard != null ? newCard : deck[top[0]];
+  }
+
+  // Actions are keyed as card value << 8 | (target + 1) << 4 | guess value, with 0 for no guess
+  public static int actionKey(int cardVal, int target, int guessVal){
+    return cardVal << 8 | (target + 1) << 4 | guessVal;
+  }
+
+  public static int keyCard(int key){ return key >> 8; }
+
+  public static Action keyToAction(int key, int player) throws IllegalActionException {
+    int target = ((key >> 4) & 0xF) - 1;
+    switch(PseudoCard.values()[keyCard(key) - 1]){
+      case GUARD: return Action.playGuard(player, target, Card.values()[(key & 0xF) - 1]);
+      case PRIEST: return Action.playPriest(player, target);
+      case BARON: return Action.playBaron(player, target);
+      case HANDMAID: return Action.playHandmaid(player);
+      case PRINCE: return Action.playPrince(player, target);
+      case KING: return Action.playKing(player, target);
+      case COUNTESS: return Action.playCountess(player);
+      default: return Action.playPrincess(player);
+    }
+  }
+
+  // Fills keys with every legal action for the player to move, holding their hand and drawn, and returns how many.
+  // Cards not worth playing from the pair, such as the Princess, are left out
+  public int legalActions(PseudoCard drawn, int[] keys){
+    int a = nextPlayer[0];
+    int plays = HandPairs.plays(hand[a].value(), drawn.value());
+    int count = 0;
+    if((plays >> hand[a].value() & 1) != 0) count = addActions(a, hand[a], drawn, keys, count);
+    if(drawn != hand[a] && (plays >> drawn.value() & 1) != 0) count = addActions(a, drawn, drawn, keys, count);
+    return count;
+  }
+
+  private int addActions(int a, PseudoCard c, PseudoCard drawn, int[] keys, int count){
+    switch(c){
+      case HANDMAID:
+      case COUNTESS:
+      case PRINCESS:
+        if(isLegal(a, -1, c, drawn)) keys[count++] = actionKey(c.value(), -1, 0);
+        break;
+      default:
+        for(int t = 0; t < numPlayers; t++){
+          if(t == a && c != PseudoCard.PRINCE) continue;
+          if(!isLegal(a, t, c, drawn)) continue;
+          if(c == PseudoCard.GUARD) for(int g = 2; g <= 8; g++) keys[count++] = actionKey(c.value(), t, g);
+          else keys[count++] = actionKey(c.value(), t, 0);
+        }
+    }
+    return count;
+  }
+
+  // The same rules as legalAction, without the cost of building exceptions
+  private boolean isLegal(int a, int t, PseudoCard c, PseudoCard drawn){
+    if(hand[a]!=c && drawn!=c) return false;
+    if((hand[a]==PseudoCard.COUNTESS || drawn==PseudoCard.COUNTESS) && (c==PseudoCard.KING || c==PseudoCard.PRINCE)) return false;
+    if(t!=-1){
+      if(eliminated(t)) return false;
+      if(c==PseudoCard.PRINCE && a==t) return true;
+      if(handmaid(t) && (!allHandmaid(a) || c==PseudoCard.PRINCE)) return false;
+    }
+    return true;
+  }
+
+  public PseudoState expand(Action act, PseudoCard card) throws IllegalActionException {
+    PseudoState expanded = cloneState();
+    try {
+      expanded.update(act, card);
+    } catch (IllegalActionException e){
+      throw e;
+    }
+    return expanded;
+  }
+
+  // Sets whether update returns a description of each action, as State.describeActions does
+  public void describeActions(boolean describe){
+    this.describe = describe;
+  }
+
+  // The description of an action, or null if descriptions are off
+  public String update(Action act, PseudoCard card) throws IllegalActionException{
+    if(player!=-1){
+      throw new IllegalActionException("Operation not permitted in player's state.");
+    }
+    int a = act.player();//actor
+    int t = act.target();//target
+    PseudoCard c = PseudoCard.convertToPseudoCard(act.card());
+    discards[a][discardCount[a]++] = c;//put played card on the top of the acting player's discard pile, required for checking actions.
+    try{
+       legalAction(a,t,c,card);
+    }catch(IllegalActionException e){
+      discardCount[a]--;
+      throw e;//reset discard top
+    }
+    if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
+      hand[a]=card;
+      for(int p = 0; p<numPlayers; p++)
+        if(p!=a) known[p][a]=false;//rescind players knowledge if a known card was played
+    }
+    handmaid[0]&=~(1<<a);
+    String ret = describe?act.toString(name(a), t!=-1?name(t):""):null;
+    switch(c){
+      case GUARD://actor plays the guard
+        ret=append(ret, guardAction(a,t,PseudoCard.convertToPseudoCard(act.guess())));
+        break;
+      case PRIEST:
+        ret=append(ret, priestAction(a,t));
+        break;
+      case BARON:
+        ret=append(ret, baronAction(a,t));
+        break;
+      case HANDMAID:
+        handmaid[0]|=1<<a;
+        break;
+      case PRINCE:
+        ret=append(ret, princeAction(t));
+        break;
+      case KING:
+        ret=append(ret, kingAction(a,t));
+        break;
+      case COUNTESS:  
+        //no update required
+        break;
+      case PRINCESS:
+        ret=append(ret, princessAction(a));
+        break;
+      default: 
+        if(Log.warn()) Log.println("Not a valid action");
+    }//end of switch
+    if(roundOver()){//check for round over
+      for(int i = 0; i<numPlayers; i++)
+       for(int p = 0; p<numPlayers; p++) 
+         known[i][p]=true;
+      int winner = roundWinner();
+      if(describe) ret+="\nPlayer "+winner+" wins the round.";
+      nextPlayer[0] = winner;
+    }
+    else{//set nextPlayer to next noneliminated player
+      nextPlayer[0] = (nextPlayer[0]+1)%numPlayers; 
+      while(eliminated(nextPlayer[0])) nextPlayer[0] = (nextPlayer[0]+1)%numPlayers; 
+    }
+    return ret;
+  }
+
+  private static String append(String ret, String outcome){
+    return ret==null?null:ret+outcome;
+  }
+
+  // The action helpers below apply their effects and return a description of them, or null if descriptions are off
+  private String guardAction(int a, int t, PseudoCard guess){
+    if(allHandmaid(a))
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
+    else if(guess==hand[t]){//correct guess, target eliminated
+      discards[t][discardCount[t]++] = hand[t];
+      eliminate(t);
+      return describe?"\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round":null;
+    } 
+    else return describe?"\nPlayer "+name(t)+" does not have the "+guess:null;
+  }
+
+  private String priestAction(int a, int t){
+    if(allHandmaid(a))
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
+    else known[a][t]=true;
+    return describe?"\nPlayer "+name(a)+" sees player "+name(t)+"'s card.":null;
+  }
+
+  private String baronAction(int a, int t){
+    if(allHandmaid(a))
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
+    int elim = -1;
+    if(hand[a].value()>hand[t].value()) elim = t;
+    else if(hand[a].value()<hand[t].value()) elim = a;
+    if(elim!=-1){
+      discards[elim][discardCount[elim]++] = hand[elim];
+      eliminate(elim);
+      return describe?"\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated":null;
+    }
+    known[a][t]=true;
+    known[t][a]=true;
+    return describe?"\n Both players hold the same card, and neither is eliminated.":null;
+  }
+
+  private String princeAction(int t){
+    PseudoCard discard = hand[t];
+    discards[t][discardCount[t]++] = discard;
+    if(discard==PseudoCard.PRINCESS){
+      eliminate(t);
+      return describe?"\nPlayer "+name(t)+" discarded the Princess and is eliminated.":null;
+    }
+    hand[t]=deck[top[0]++];
+    for(int p =0; p<numPlayers;p++) 
+      if(p!=t)known[p][t]=false;
+    return describe?"\nPlayer "+name(t)+" discards the "+discard+".":null;
+  }
+
+  private String kingAction(int a, int t){
+    if(allHandmaid(a))
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;
+    known[a][t]=true;
+    known[t][a]=true;
+    for(int p =0; p<numPlayers;p++){ 
+      if(p!=t && p!=a){
+        boolean tmp = known[p][t];
+        known[p][t] = known[p][a];
+        known[p][a] = tmp;
+      }
+    }
+    PseudoCard tmp = hand[a];
+    hand[a] = hand[t];
+    hand[t] = tmp;
+    return describe?"\nPlayer "+name(a)+" and player "+name(t)+" swap cards.":null;
+  }
+
+  // Removes a player from the round, revealing their card to everyone
+  private void eliminate(int p){
+    hand[p]=null;
+    alive[0]&=~(1<<p);
+    for(int q = 0; q<numPlayers; q++) known[q][p]=true;
+  }
+
+  private String princessAction(int a){
+    discards[a][discardCount[a]++] = hand[a];
+    eliminate(a);
+    if(!describe) return null;
+    String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
+    outcome += "\n Player "+name(a)+" was also holding the "+discards[a][discardCount[a]-1]+".";
+    return outcome;
+  }
+
+  public int getPlayerIndex(){return player;}
+
+  public java.util.Iterator<PseudoCard> getDiscards(int player){
+    return new java.util.Iterator<PseudoCard>(){
+      int p=player;
+      int top=discardCount[player];
+      public boolean hasNext(){return top>0;}
+      public PseudoCard next() throws java.util.NoSuchElementException{
+        if(hasNext()) return discards[p][--top];
+        else throw new java.util.NoSuchElementException();
+      }
+    };
+  }
+
+  public PseudoCard getCard(int playerIndex){
+    if(player==-1 || known[player][playerIndex]) return hand[playerIndex];
+    else return null;
+  }
+
+  // The card as the viewer sees it, so a full state can be read as any player's view without making one
+  public PseudoCard getCard(int viewer, int playerIndex){
+    if(known[viewer][playerIndex]) return hand[playerIndex];
+    else return null;
+  }
+
+  public boolean eliminated(int player){
+    return (alive[0] >> player & 1) == 0;
+  }
+
+  public int nextPlayer(){
+    return nextPlayer[0];
+  }
+
+  public int numPlayers(){
+    return numPlayers;
+  }
+
+  public Ruleset ruleset(){
+    return rules;
+  }
+
+  public PseudoAgent getPlayer(int playerIndex){
+    return randomAgents[playerIndex];
+  }
+
+  public PseudoCard getNewCard(){ return newCard; }
+
+  // Zobrist key of everything the observer can see: discards, protection, eliminations, known hands and the turn
+  public long infoSetKey(int observer){
+    long key = TranspositionTable.turnKey(nextPlayer[0]);
+    for(int p = 0; p < numPlayers; p++){
+      for(int j = 0; j < discardCount[p]; j++) key ^= TranspositionTable.discardKey(p, j, discards[p][j].value());
+      if((handmaid[0] >> p & 1) != 0) key ^= TranspositionTable.handmaidKey(p);
+      if(hand[p] == null) key ^= TranspositionTable.eliminatedKey(p);
+      else if(known[observer][p]) key ^= TranspositionTable.knownKey(p, hand[p].value());
+    }
+    return key;
+  }
+
+  // Sum of the values of the player's discards, which breaks ties at the end of the round
+  public int discardValue(int playerIndex){
+    int dv = 0;
+    for(int j = 0; j < discardCount[playerIndex]; j++) dv += discards[playerIndex][j].value();
+    return dv;
+  }
+
+  // Whether the viewer knows the player's hand
+  public boolean knows(int viewer, int playerIndex){
+    return known[viewer][playerIndex];
+  }
+
+  // Counts, by card value - 1, of the cards the viewer has not seen, given the card they drew
+  public void unseenBy(int viewer, PseudoCard drawn, int[] counts){
+    for(PseudoCard c : PseudoCard.values()) counts[c.value() - 1] = rules.count(c.value());
+    for(int p = 0; p < numPlayers; p++){
+      for(int j = 0; j < discardCount[p]; j++) counts[discards[p][j].value() - 1]--;
+      if(hand[p] != null && known[viewer][p]) counts[hand[p].value() - 1]--;
+    }
+    if(drawn != null) counts[drawn.value() - 1]--;
+  }
+
+  // Hash of everything that decides the rest of the round when every card is known:
+  // hands, the cards left in the deck in order, protection, knowledge, the turn and the discards,
+  // counted by value, which settle ties and what a player can deduce
+  public long positionKey(){
+    return positionHash(0);
+  }
+
+  // A second hash of the same position, independent of positionKey, to confirm a match on it
+  public long positionCheck(){
+    return positionHash(0x632BE59BD9B4E019L);
+  }
+
+  private long positionHash(long seed){
+    long key = TranspositionTable.mix(TranspositionTable.mix(top[0] + seed) + nextPlayer[0]);
+    for(int p = 0; p < numPlayers; p++){
+      long counts = 0; // Four bits per card value
+      for(int j = 0; j < discardCount[p]; j++) counts += 1L << 4 * (discards[p][j].value() - 1);
+      long knows = 0;
+      for(int q = 0; q < numPlayers; q++) if(known[p][q]) knows |= 1 << q;
+      long h = hand[p] == null ? 0 : hand[p].value();
+      key = TranspositionTable.mix(key + (h | (handmaid[0] << 4 >> p & 16) | counts << 5 | knows << 37));
+    }
+    for(int i = top[0]; i < deck.length; i++) key = TranspositionTable.mix(key + deck[i].value());
+    return key;
+  }
+
+  public boolean handmaid(int player){
+    if(player<0 || player >=numPlayers) return false;
+    return (handmaid[0] >> player & 1) != 0;
+  }
+
+  public boolean allHandmaid(int player){
+    return targetable(player) == 0;
+  }
+
+  // Bitmask of the players still in the round
+  public int remaining(){
+    return alive[0];
+  }
+
+  // Players the given player's card may affect: everyone else still in and unprotected, as State.targetable
+  public int targetable(int player){
+    return alive[0] & ~handmaid[0] & ~(1 << player);
+  }
+
+  private String name(int playerIndex){
+    return randomAgents[playerIndex].toString()+"("+playerIndex+")";
+  }
+ 
+  public int deckSize(){
+    return cards-top[0];
+  }
+
+  public boolean roundOver(){
+    int al = alive[0];
+    return (al & al - 1) == 0 || deckSize()<2;
+  }
+
+  public int roundWinner(){
+    if(!roundOver()) return -1;
+    int winner=-1;
+    int topCard=-1;
+    int discardValue=-1;
+    for(int p=0; p<numPlayers; p++){
+      if(!eliminated(p)){
+        int dv = 0;
+        for(int j=0; j<discardCount[p]; j++) dv+=discards[p][j].value();
+        if(hand[p].value()>topCard || (hand[p].value()==topCard && dv>discardValue)){
+          winner = p;
+          topCard = hand[p].value();
+          discardValue = dv;
+        }
+      }
+    }
+    return winner;
+  }
+}
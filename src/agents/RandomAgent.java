@@ -17,6 +17,11 @@ public class RandomAgent implements Agent{
     rand  = new Random();
   }
 
+  //seeded constructor, for reproducible games
+  public RandomAgent(long seed){
+    rand  = new Random(seed);
+  }
+
   /**
    * Reports the agents name
    * */
@@ -77,8 +82,8 @@ public class RandomAgent implements Agent{
           case COUNTESS:
             act = Action.playCountess(myIndex);
             break;
-          default:
-            act = null;//never play princess
+          default://never play princess, unless both cards are princesses
+            act = c==current.getCard(myIndex) ? Action.playPrincess(myIndex) : null;
         }
       }catch(IllegalActionException e){/*do nothing*/}
     }
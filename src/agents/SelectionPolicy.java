@@ -0,0 +1,102 @@
+package agents;
+
+/**
+ * The tree policy used to choose among the children of a node during selection.
+ * Scores are higher for children that should be tried next; a child with no tries
+ * scores infinity so that every child is tried once before any is revisited.
+ * The bundled policies take their logarithms, square roots and reciprocals from
+ * precomputed tables for counts below Lookup.SIZE, so choosing a child costs a few
+ * array reads and multiplications rather than a log, a square root and two divisions.
+ */
+interface SelectionPolicy {
+  /** Upper confidence bound over the parent's tries */
+  SelectionPolicy UCB1 = new UCB1Policy();
+  /** Information set UCT, bounding over the number of times the child was available */
+  SelectionPolicy ISUCT = new ISUCTPolicy();
+  /** Predictor UCT with a uniform prior over the siblings */
+  SelectionPolicy PUCT = new PUCTPolicy();
+
+  /**
+   * @param wins wins recorded through the child
+   * @param tries simulations recorded through the child
+   * @param parentTries simulations recorded through the parent, or through all the siblings
+   * @param available times the child was legal when its parent was visited
+   * @param siblings number of children being chosen between
+   * @param expConst exploration constant
+   * @return the child's score
+   */
+  double score(int wins, int tries, int parentTries, int available, int siblings, double expConst);
+}
+
+// UCB1: w/n + c * sqrt(2 ln N / n)
+class UCB1Policy implements SelectionPolicy {
+  private static final double SQRT2 = Math.sqrt(2);
+
+  public double score(int wins, int tries, int parentTries, int available, int siblings, double expConst){
+    if(tries <= 0) return Double.POSITIVE_INFINITY;
+    return wins * Lookup.inverse(tries) + expConst * SQRT2 * Lookup.sqrtLog(parentTries) * Lookup.inverseSqrt(tries);
+  }
+
+  public String toString(){return "UCB1";}
+}
+
+// ISUCT: w/n + c * sqrt(2 ln a / n), where a counts the visits to the parent in which this child was legal
+class ISUCTPolicy implements SelectionPolicy {
+  private static final double SQRT2 = Math.sqrt(2);
+
+  public double score(int wins, int tries, int parentTries, int available, int siblings, double expConst){
+    if(tries <= 0) return Double.POSITIVE_INFINITY;
+    return wins * Lookup.inverse(tries) + expConst * SQRT2 * Lookup.sqrtLog(available) * Lookup.inverseSqrt(tries);
+  }
+
+  public String toString(){return "ISUCT";}
+}
+
+// PUCT: w/n + c * P * sqrt(N) / (1 + n), with the prior P spread evenly over the siblings
+class PUCTPolicy implements SelectionPolicy {
+  public double score(int wins, int tries, int parentTries, int available, int siblings, double expConst){
+    double exploit = tries <= 0 ? 0 : wins * Lookup.inverse(tries);
+    return exploit + expConst * Lookup.inverse(siblings) * Lookup.sqrt(parentTries) * Lookup.inverse(tries + 1);
+  }
+
+  public String toString(){return "PUCT";}
+}
+
+/**
+ * Tables of the functions of visit counts used by the selection policies.
+ * Counts beyond the tables fall back to Math.
+ */
+final class Lookup {
+  static final int SIZE = 1 << 16;
+
+  private static final double[] INVERSE = new double[SIZE];
+  private static final double[] SQRT = new double[SIZE];
+  private static final double[] INVERSE_SQRT = new double[SIZE];
+  private static final double[] SQRT_LOG = new double[SIZE];
+
+  static {
+    for(int n = 1; n < SIZE; n++){
+      INVERSE[n] = 1.0 / n;
+      SQRT[n] = Math.sqrt(n);
+      INVERSE_SQRT[n] = 1.0 / SQRT[n];
+      SQRT_LOG[n] = Math.sqrt(Math.log(n));
+    }
+  }
+
+  private Lookup(){}
+
+  // 1 / n, for n > 0
+  static double inverse(int n){ return n < SIZE ? INVERSE[n] : 1.0 / n; }
+
+  // sqrt(n), for n >= 0
+  static double sqrt(int n){ return n < SIZE ? SQRT[n] : Math.sqrt(n); }
+
+  // 1 / sqrt(n), for n > 0
+  static double inverseSqrt(int n){ return n < SIZE ? INVERSE_SQRT[n] : 1.0 / Math.sqrt(n); }
+
+  // sqrt(ln n), taken as 0 for n <= 1
+  static double sqrtLog(int n){
+    if(n <= 1) return 0;
+    return n < SIZE ? SQRT_LOG[n] : Math.sqrt(Math.log(n));
+  }
+}
@@ -0,0 +1,96 @@
+package agents;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded table of search statistics keyed by information set.
+ * Nodes reached by different orders of play that look the same to the searching player
+ * share one NodeStats, so every simulation through either of them counts for both.
+ * Keys are Zobrist hashes over the discard piles, handmaid protection, eliminations,
+ * the hands the observer knows and whose turn it is.
+ * The table never grows: when a slot is taken by a different information set the
+ * resident entry is only replaced if it has seen few simulations, otherwise the new
+ * node keeps private statistics.
+ * The table may be shared by several search threads; slots are claimed with compare and set.
+ */
+class TranspositionTable {
+  static final int MAX_PLAYERS = 8;
+  static final int MAX_DISCARDS = 32;
+  private static final int REPLACE_TRIES = 16; // Entries with fewer tries than this may be evicted
+
+  private static final long[][][] DISCARD = new long[MAX_PLAYERS][MAX_DISCARDS][8];
+  private static final long[][] KNOWN = new long[MAX_PLAYERS][8];
+  private static final long[] HANDMAID = new long[MAX_PLAYERS];
+  private static final long[] ELIMINATED = new long[MAX_PLAYERS];
+  private static final long[] TURN = new long[MAX_PLAYERS];
+  private static final long[] DRAWN = new long[8];
+
+  static {
+    Random rand = new Random(0x5EEDL); // Fixed so keys are stable between runs
+    for(int p = 0; p < MAX_PLAYERS; p++){
+      for(int j = 0; j < MAX_DISCARDS; j++) for(int c = 0; c < 8; c++) DISCARD[p][j][c] = rand.nextLong();
+      for(int c = 0; c < 8; c++) KNOWN[p][c] = rand.nextLong();
+      HANDMAID[p] = rand.nextLong();
+      ELIMINATED[p] = rand.nextLong();
+      TURN[p] = rand.nextLong();
+    }
+    for(int c = 0; c < 8; c++) DRAWN[c] = rand.nextLong();
+  }
+
+  private final AtomicReferenceArray<NodeStats> entries; // Each entry carries its own key
+  private final int mask;
+
+  // Construct a table with room for 2^bits entries
+  public TranspositionTable(int bits){
+    entries = new AtomicReferenceArray<NodeStats>(1 << bits);
+    mask = (1 << bits) - 1;
+  }
+
+  // Empty the table so it can serve another search. Not safe while a search is using it;
+  // search threads started afterwards see the cleared slots
+  public void clear(){
+    for(int i = 0; i <= mask; i++) entries.setPlain(i, null);
+  }
+
+  // Key contributions, combined by xor
+  static long discardKey(int player, int position, int cardVal){ return DISCARD[player][position][cardVal - 1]; }
+
+  static long knownKey(int player, int cardVal){ return KNOWN[player][cardVal - 1]; }
+
+  static long handmaidKey(int player){ return HANDMAID[player]; }
+
+  static long eliminatedKey(int player){ return ELIMINATED[player]; }
+
+  static long turnKey(int player){ return TURN[player]; }
+
+  static long drawnKey(int cardVal){ return DRAWN[cardVal - 1]; }
+
+  // Spread a packed action key (see PseudoState.actionKey) over 64 bits
+  static long actionHash(int actionKey){
+    return mix(actionKey);
+  }
+
+  // Spread 64 bits over 64 bits, so that keys built up by adding small values stay well distributed
+  static long mix(long z){
+    z *= 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // Find the statistics for an information set, creating them if needed
+  public NodeStats lookup(long key){
+    int slot = (int) key & mask;
+    NodeStats resident = entries.get(slot);
+    if(resident != null && resident.key == key) return resident;
+    NodeStats stats = new NodeStats(key);
+    if(resident == null || resident.getTries() < REPLACE_TRIES){
+      if(entries.compareAndSet(slot, resident, stats)) return stats;
+      // Another thread got there first, possibly with the same information set
+      resident = entries.get(slot);
+      if(resident != null && resident.key == key) return resident;
+    }
+    return stats;
+  }
+}
@@ -0,0 +1,178 @@
+package agents;
+import loveletter.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chooses GodV2's search constants by successive halving.
+ * A set of random settings (depth, exploration constant, iterations and the share of rollouts
+ * replaced by the evaluator) each play a batch of games at seat 0 against random agents. The
+ * better half go through to the next rung, where the batch is doubled, until one is left. Every
+ * setting plays the same deals against identically seeded opponents in a rung, so they are
+ * compared on equal terms. GodV2 plays without an opening book or endgame search, so every
+ * decision it makes is made by the search being tuned.
+ * Strength is the share of round tokens won; cost is the CPU time the whole game took per
+ * decision by GodV2, which the search dominates. With a target strength, settings that reach
+ * it are ranked by cost, so the cheapest adequate setting wins; otherwise the strongest does.
+ * Run with
+ * <pre>java agents.Tuner [settings] [games] [threads] [target] [players]</pre>
+ */
+public class Tuner {
+  private static final int[] DEPTHS = {2, 3, 4, 6};
+  private static final int[] ITERATIONS = {500, 1000, 2000, 5000, 10000, 20000};
+  private static final double[] EVAL_MIXES = {0, 0.5, 1};
+
+  private final int threads;
+  private final ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+  private final double target;
+  private final int numPlayers;
+
+  // One setting of the search constants and its results in the current rung
+  static class Setting {
+    final int depth;
+    final int iterations;
+    final double expConst;
+    final double evalMix;
+    long tokens; // Tokens won by GodV2
+    long rounds; // Tokens won by anyone
+    long cpuNanos;
+    long decisions;
+
+    Setting(int depth, int iterations, double expConst, double evalMix){
+      this.depth = depth;
+      this.iterations = iterations;
+      this.expConst = expConst;
+      this.evalMix = evalMix;
+    }
+
+    double strength(){ return rounds == 0 ? 0 : (double) tokens / rounds; }
+
+    double stdErr(){ return rounds == 0 ? 0 : Math.sqrt(strength() * (1 - strength()) / rounds); }
+
+    double cpuMillis(){ return decisions == 0 ? 0 : cpuNanos / 1e6 / decisions; }
+
+    // Tokens won above chance per CPU millisecond per decision
+    double efficiency(int players){ return (strength() - 1.0 / players) / Math.max(1e-3, cpuMillis()); }
+
+    void reset(){ tokens = rounds = cpuNanos = decisions = 0; }
+
+    public String toString(){
+      return String.format("depth %d, iterations %6d, expConst %.3f, evalMix %.1f", depth, iterations, expConst, evalMix);
+    }
+  }
+
+  public Tuner(int threads, double target, int numPlayers){
+    if(threads < 1) throw new IllegalArgumentException("threads must be positive");
+    this.threads = threads;
+    this.target = target;
+    this.numPlayers = numPlayers;
+    if(!cpu.isCurrentThreadCpuTimeSupported()) throw new IllegalStateException("Thread CPU time is not available");
+  }
+
+  // Draws random settings; the evaluator is only tried if there is a model to use
+  static List<Setting> sample(int count, Random rand){
+    boolean model = Evaluator.standard() != null;
+    List<Setting> settings = new ArrayList<Setting>();
+    for(int i = 0; i < count; i++){
+      settings.add(new Setting(DEPTHS[rand.nextInt(DEPTHS.length)], ITERATIONS[rand.nextInt(ITERATIONS.length)],
+        0.1 * Math.pow(20, rand.nextDouble()), model ? EVAL_MIXES[rand.nextInt(EVAL_MIXES.length)] : 0));
+    }
+    return settings;
+  }
+
+  // Runs successive halving and returns every setting, best first, with the results of the last rung it played
+  // Each call has its own pool, so a Tuner may be used again
+  public List<Setting> tune(List<Setting> settings, int games) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads); // Platform threads, so their CPU time can be read
+    try {
+      List<Setting> alive = new ArrayList<Setting>(settings);
+      List<Setting> ranked = new ArrayList<Setting>();
+      for(int rung = 0; alive.size() > 1; rung++, games *= 2){
+        List<Future<?>> done = new ArrayList<Future<?>>();
+        for(Setting s : alive){
+          s.reset();
+          for(int g = 0; g < games; g++){
+            long seed = (long) rung << 32 | g;
+            done.add(pool.submit(() -> { play(s, seed); return null; }));
+          }
+        }
+        for(Future<?> f : done) f.get();
+        alive.sort(order());
+        report(rung, games, alive);
+        List<Setting> out = alive.subList((alive.size() + 1) / 2, alive.size());
+        ranked.addAll(0, out);
+        alive = new ArrayList<Setting>(alive.subList(0, (alive.size() + 1) / 2));
+      }
+      ranked.addAll(0, alive);
+      return ranked;
+    } finally {
+      pool.shutdownNow(); // Nothing is queued after a full run; after a failure, the remaining games are dropped
+    }
+  }
+
+  // Strongest first, or if there is a target, cheapest of those that reach it then strongest of the rest
+  private Comparator<Setting> order(){
+    if(target <= 0) return Comparator.comparingDouble(Setting::strength).reversed();
+    return (a, b) -> {
+      boolean aOk = a.strength() >= target, bOk = b.strength() >= target;
+      if(aOk != bOk) return aOk ? -1 : 1;
+      if(aOk) return Double.compare(a.cpuMillis(), b.cpuMillis());
+      return Double.compare(b.strength(), a.strength());
+    };
+  }
+
+  // Plays one game with the setting at seat 0 and adds its results
+  private void play(Setting s, long seed){
+    Agent[] agents = new Agent[numPlayers];
+    agents[0] = new GodV2(s.depth, s.iterations, s.expConst, s.evalMix);
+    for(int p = 1; p < numPlayers; p++) agents[p] = new RandomAgent(numPlayers * seed + p); // The same opponents for every setting
+    LoveLetter env = new LoveLetter(seed, null);
+    long[] decisions = new long[1];
+    env.addListener(new GameListener(){
+      public void draw(int player, Card card){ if(player == 0) decisions[0]++; }
+    });
+    long start = cpu.getCurrentThreadCpuTime();
+    int[] scores = env.playGame(agents);
+    long used = cpu.getCurrentThreadCpuTime() - start;
+    if(scores == null) return;
+    synchronized(s){
+      s.tokens += scores[0];
+      for(int score : scores) s.rounds += score;
+      s.cpuNanos += used;
+      s.decisions += decisions[0];
+    }
+  }
+
+  private void report(int rung, int games, List<Setting> settings){
+    System.out.println("Rung " + rung + ", " + games + " games each");
+    for(Setting s : settings){
+      System.out.printf("  %s: strength %.3f +- %.3f, %.2f ms/decision, %.4f above chance per ms%n",
+        s, s.strength(), s.stdErr(), s.cpuMillis(), s.efficiency(numPlayers));
+    }
+  }
+
+  /**
+   * Tunes from the command line.
+   * @param args the number of settings to try, games each plays in the first rung,
+   * threads to play on, the target strength, or 0 to find the strongest, and the number of players
+   * @throws Exception if a game cannot be played
+   */
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    double target = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+    int numPlayers = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+    Log.setLevel(Log.Level.QUIET);
+    List<Setting> ranked = new Tuner(threads, target, numPlayers).tune(sample(count, new Random()), games);
+    System.out.println("Best: " + ranked.get(0));
+  }
+}
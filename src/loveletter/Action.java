@@ -25,9 +25,9 @@ public class Action{
    * @throws IllegalActionException if an illegal action.
    * **/
   private Action(Card card, int player, int target, Card guess) throws IllegalActionException{
-    if(player < 0 || player >3) throw new IllegalActionException("Player out of range");
+    if(player < 0 || player >=Ruleset.MAX_PLAYERS) throw new IllegalActionException("Player out of range");
     if(card==null) throw new IllegalActionException("Null card specified in action");
-    if(target < -1 || target >3) throw new IllegalActionException("Player out of range");
+    if(target < -1 || target >=Ruleset.MAX_PLAYERS) throw new IllegalActionException("Player out of range");
     this.card = card;
     this.player = player;
     this.target = target;
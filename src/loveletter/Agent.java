@@ -13,6 +13,15 @@ public interface Agent{
   public String toString();
 
 
+  /**
+   * Method called at the start of each game, before the first round.
+   * An agent may be reused for many games. The state given here is the one given to every round of the game,
+   * as it follows the game from round to round, so structures an agent needs for the whole game,
+   * such as search trees and belief tables, can be built here and reset in newRound.
+   * @param start the agent's view of the game
+   **/
+  public default void newGame(State start){}
+
   /**
    * Method called at the start of a round
    * @param start the initial state of the round
@@ -0,0 +1,187 @@
+package loveletter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A GameListener that hands events to another listener on a background thread.
+ * Events are packed into single longs and published through a bounded lock-free ring buffer,
+ * so the game thread never blocks or allocates. If the consumer falls behind and the buffer
+ * fills, new events are dropped and counted rather than slowing down the game.
+ * Several engines may share one AsyncGameListener.
+ * The delegate is passed null in place of the State, since the engine's state has moved on
+ * by the time the event is delivered, and a scores array of its own at the end of each game.
+ * Exceptions thrown by the delegate are logged as warnings, and after MAX_FAILURES in a row
+ * it is no longer called and later events are counted as dropped.
+ * */
+public class AsyncGameListener implements GameListener{
+
+  private static final int ROUND_START = 1;
+  private static final int DRAW = 2;
+  private static final int ACTION = 3;
+  private static final int ELIMINATION = 4;
+  private static final int ROUND_END = 5;
+  private static final int GAME_END = 6;
+
+  /**Consecutive exceptions from the delegate after which it is no longer called**/
+  public static final int MAX_FAILURES = 10;
+
+  private final GameListener delegate;
+  private final AtomicLongArray ring; //0 marks a slot that has not been published
+  private final int mask;
+  private final AtomicLong tail; //next slot to claim
+  private final AtomicLong head; //next slot to consume
+  private final AtomicLong dropped;
+  private final Thread consumer;
+  private volatile boolean running;
+  private int failures; //consecutive exceptions from the delegate, only touched by the consumer thread
+
+  /**
+   * Creates the listener and starts its consumer thread.
+   * @param delegate the listener that receives the events on the consumer thread
+   * @param capacity the size of the ring buffer, rounded up to a power of two
+   * */
+  public AsyncGameListener(GameListener delegate, int capacity){
+    this.delegate = delegate;
+    int size = Integer.highestOneBit(Math.max(2, capacity-1))<<1;
+    ring = new AtomicLongArray(size);
+    mask = size-1;
+    tail = new AtomicLong();
+    head = new AtomicLong();
+    dropped = new AtomicLong();
+    running = true;
+    consumer = new Thread(new Runnable(){public void run(){consume();}}, "game-events");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * @return the number of events discarded because the buffer was full or the delegate had failed
+   * */
+  public long dropped(){return dropped.get();}
+
+  /**
+   * Delivers any events already published and stops the consumer thread.
+   * @throws InterruptedException if interrupted while waiting for the consumer
+   * */
+  public void close() throws InterruptedException{
+    running = false;
+    LockSupport.unpark(consumer);
+    consumer.join();
+  }
+
+  public void roundStart(State state){publish(pack(ROUND_START, 0, null, -1, null, 0));}
+
+  public void draw(int player, Card card){publish(pack(DRAW, player, card, -1, null, 0));}
+
+  public void action(Action act, State state){publish(pack(ACTION, act.player(), act.card(), act.target(), act.guess(), 0));}
+
+  public void elimination(int player, State state){publish(pack(ELIMINATION, player, null, -1, null, 0));}
+
+  public void roundEnd(int winner, State state){publish(pack(ROUND_END, winner, null, -1, null, 0));}
+
+  public void gameEnd(int winner, int[] scores){
+    long packed = 0;
+    for(int p = 0; p<scores.length; p++) packed |= (long)(scores[p]&0xF)<<(4*p);
+    publish(pack(GAME_END, winner, null, scores.length-1, null, packed));
+  }
+
+  //layout: type(4) player(4) card(4) target(4) guess(4) payload(32), cards and targets stored +1 so null and -1 are 0
+  private static long pack(int type, int player, Card card, int target, Card guess, long payload){
+    return type | (player&0xF)<<4 | (card==null?0:card.ordinal()+1)<<8 | ((target+1)&0xF)<<12
+      | (guess==null?0:guess.ordinal()+1)<<16 | payload<<20;
+  }
+
+  private void publish(long event){
+    long t;
+    do{
+      t = tail.get();
+      if(t-head.get()>mask){//full, never wait on the consumer
+        dropped.incrementAndGet();
+        return;
+      }
+    }while(!tail.compareAndSet(t, t+1));
+    ring.lazySet((int)t&mask, event);
+  }
+
+  private void consume(){
+    while(true){
+      long h = head.get();
+      int slot = (int)h&mask;
+      long event = ring.get(slot);
+      if(event==0){
+        if(!running && tail.get()==h) return;
+        LockSupport.parkNanos(100000);
+        continue;
+      }
+      ring.lazySet(slot, 0);
+      head.lazySet(h+1);
+      if(failures>=MAX_FAILURES){
+        dropped.incrementAndGet();
+        continue;
+      }
+      try{
+        deliver(event);
+        failures = 0;
+      }catch(RuntimeException e){
+        failures++;
+        if(Log.warn()){
+          Log.println("Game listener "+delegate+" failed: "+e);
+          if(failures==MAX_FAILURES) Log.println("Game listener "+delegate+" failed "+MAX_FAILURES+" times in a row and will not be called again");
+        }
+      }
+    }
+  }
+
+  private void deliver(long event){
+    int type = (int)event&0xF;
+    int player = (int)(event>>4)&0xF;
+    int card = (int)(event>>8)&0xF;
+    int target = ((int)(event>>12)&0xF)-1;
+    int guess = (int)(event>>16)&0xF;
+    long payload = event>>>20;
+    Card[] cards = Card.values();
+    switch(type){
+      case ROUND_START:
+        delegate.roundStart(null);
+        break;
+      case DRAW:
+        delegate.draw(player, cards[card-1]);
+        break;
+      case ACTION:
+        delegate.action(rebuild(cards[card-1], player, target, guess==0?null:cards[guess-1]), null);
+        break;
+      case ELIMINATION:
+        delegate.elimination(player, null);
+        break;
+      case ROUND_END:
+        delegate.roundEnd(player, null);
+        break;
+      case GAME_END:
+        int num = target+1;
+        int[] scores = new int[num];//the delegate may keep it
+        for(int p = 0; p<num; p++) scores[p] = (int)(payload>>(4*p))&0xF;
+        delegate.gameEnd(player, scores);
+        break;
+      default:
+    }
+  }
+
+  private static Action rebuild(Card card, int player, int target, Card guess){
+    try{
+      switch(card){
+        case GUARD: return Action.playGuard(player, target, guess);
+        case PRIEST: return Action.playPriest(player, target);
+        case BARON: return Action.playBaron(player, target);
+        case HANDMAID: return Action.playHandmaid(player);
+        case PRINCE: return Action.playPrince(player, target);
+        case KING: return Action.playKing(player, target);
+        case COUNTESS: return Action.playCountess(player);
+        default: return Action.playPrincess(player);
+      }
+    }catch(IllegalActionException e){
+      return null;//unreachable, the action was legal when it was published
+    }
+  }
+}
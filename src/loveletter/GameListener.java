@@ -0,0 +1,52 @@
+package loveletter;
+
+/**
+ * An interface for observing the events of a game of LoveLetter without taking part in it.
+ * Listeners are registered on a LoveLetter engine and are called on the game thread,
+ * so they should return quickly (see AsyncGameListener for handing events to another thread).
+ * The State passed to a listener is the engine's state and must not be modified or retained.
+ * All methods do nothing by default, so listeners only override the events they need.
+ * */
+public interface GameListener{
+
+  /**
+   * Called when a round is dealt, before any player draws.
+   * @param state the game state at the start of the round
+   * **/
+  default void roundStart(State state){}
+
+  /**
+   * Called when a player draws a card at the start of their turn.
+   * @param player the index of the player drawing
+   * @param card the card drawn
+   * **/
+  default void draw(int player, Card card){}
+
+  /**
+   * Called after an action has been applied to the game state.
+   * @param act the action performed
+   * @param state the game state after the action
+   * **/
+  default void action(Action act, State state){}
+
+  /**
+   * Called when a player is eliminated from the round.
+   * @param player the index of the eliminated player
+   * @param state the game state after the elimination
+   * **/
+  default void elimination(int player, State state){}
+
+  /**
+   * Called when a round is over, after its winner has been awarded the token.
+   * @param winner the index of the round winner
+   * @param state the game state at the end of the round
+   * **/
+  default void roundEnd(int winner, State state){}
+
+  /**
+   * Called when the game is over.
+   * @param winner the index of the game winner
+   * @param scores the final score of each player
+   * **/
+  default void gameEnd(int winner, int[] scores){}
+}
@@ -0,0 +1,59 @@
+package loveletter;
+
+import java.io.PrintStream;
+
+/**
+ * A minimal logging switch shared by the engine and the bundled agents.
+ * Callers test the level before building a message, so that nothing is formatted
+ * and the sink is never locked for messages that would be discarded:
+ * <pre>if(Log.debug()) Log.println("Trying "+i);</pre>
+ * At QUIET, the engine also stops describing actions and writing game transcripts.
+ * */
+public final class Log{
+
+  /**
+   * The amount of output, each level including all those before it.
+   * */
+  public enum Level{QUIET, WARN, INFO, DEBUG}
+
+  private static volatile Level level = Level.INFO;
+  private static volatile PrintStream sink = System.out;
+
+  private Log(){}
+
+  /**
+   * @return the current level
+   * **/
+  public static Level level(){return level;}
+
+  /**
+   * @param l the new level
+   * **/
+  public static void setLevel(Level l){level = l;}
+
+  /**
+   * @param ps the stream messages are written to
+   * **/
+  public static void setSink(PrintStream ps){sink = ps;}
+
+  /**
+   * @return true if warnings should be written
+   * **/
+  public static boolean warn(){return level.compareTo(Level.WARN)>=0;}
+
+  /**
+   * @return true if informational messages should be written
+   * **/
+  public static boolean info(){return level.compareTo(Level.INFO)>=0;}
+
+  /**
+   * @return true if debugging messages should be written
+   * **/
+  public static boolean debug(){return level==Level.DEBUG;}
+
+  /**
+   * Writes a message to the sink. Callers should check the level first.
+   * @param msg the message
+   * **/
+  public static void println(Object msg){sink.println(msg);}
+}
@@ -16,16 +16,30 @@ public class LoveLetter{
   private Agent rando;
   private Random random;
   private PrintStream ps;
+  private GameListener[] listeners;
+  private Ruleset rules;
 
   /**
    * Constructs a LoveLetter game.
    * @param seed a seed for the random number generator.
-   * @param ps a PrintStream object to record the events of the game
+   * @param ps a PrintStream object to record the events of the game, or null to play silently
    * **/
   public LoveLetter(long seed, PrintStream ps){
+    this(seed, ps, Ruleset.CLASSIC);
+  }
+
+  /**
+   * Constructs a LoveLetter game played under a ruleset other than the classic one.
+   * @param seed a seed for the random number generator.
+   * @param ps a PrintStream object to record the events of the game, or null to play silently
+   * @param rules the deck and scoring to play with
+   * **/
+  public LoveLetter(long seed, PrintStream ps, Ruleset rules){
     this.random = new Random(seed);
     this.ps = ps;
+    this.rules = rules;
     rando = new RandomAgent();
+    listeners = new GameListener[0];
   }
 
   /**
@@ -38,6 +52,41 @@ public class LoveLetter{
   }
 
 
+  /**
+   * Reseeds the game's random number generator, so one engine can play a series of seeded games.
+   * A game played after setSeed(seed) is dealt as one played by a new engine constructed with seed.
+   * @param seed a seed for the random number generator.
+   * **/
+  public void setSeed(long seed){
+    random.setSeed(seed);
+  }
+
+  /**
+   * Registers a listener to observe the events of every game played by this engine.
+   * @param listener the listener to add
+   * **/
+  public void addListener(GameListener listener){
+    GameListener[] grown = java.util.Arrays.copyOf(listeners, listeners.length+1);
+    grown[listeners.length] = listener;
+    listeners = grown;
+  }
+
+  /**
+   * Removes a previously registered listener.
+   * @param listener the listener to remove
+   * **/
+  public void removeListener(GameListener listener){
+    for(int i = 0; i<listeners.length; i++){
+      if(listeners[i]==listener){
+        GameListener[] shrunk = new GameListener[listeners.length-1];
+        System.arraycopy(listeners, 0, shrunk, 0, i);
+        System.arraycopy(listeners, i+1, shrunk, i, shrunk.length-i);
+        listeners = shrunk;
+        return;
+      }
+    }
+  }
+
   /**
    * Plays a game of LoveLetter
    * @param agents the players in the game
@@ -47,42 +96,85 @@ public class LoveLetter{
     boolean gameOver = false;
     int winner=0;
     int numPlayers = agents.length;
-    State gameState = new State(random, agents);//the game state
+    State gameState = new State(random, agents, rules);//the game state
+    boolean verbose = ps!=null && Log.info();//quiet games neither format nor print anything
+    gameState.describeActions(verbose);
     State[] playerStates = new State[numPlayers];
+    GameListener[] listeners = this.listeners;//fixed for the length of the game
+    Metrics.Histogram[] latency = new Metrics.Histogram[numPlayers];//each seat's histograms, looked up at most once per game
+    Metrics.Histogram[] allocation = new Metrics.Histogram[numPlayers];
     try{
+      for(int i = 0; i<numPlayers; i++){
+        playerStates[i] = gameState.playerState(i);//views follow the game state from round to round
+        agents[i].newGame(playerStates[i]);
+      }
       while(!gameState.gameOver()){
-        for(int i = 0; i<numPlayers; i++){
-          playerStates[i] = gameState.playerState(i);
+        for(int i = 0; i<numPlayers; i++)
           agents[i].newRound(playerStates[i]);
-        }
+        for(GameListener l: listeners) l.roundStart(gameState);
         while(!gameState.roundOver()){
 // System.out.println("Cards are:\nplayer 0:"+gameState.getCard(0)+"\nplayer 1:"+gameState.getCard(1)+"\nplayer 2:"+gameState.getCard(2)+"\nplayer 3:"+gameState.getCard(3));        
           Card topCard = gameState.drawCard(); 
 // System.out.println("Player "+gameState.nextPlayer()+" draws the "+topCard);
-          Action act = agents[gameState.nextPlayer()].playCard(topCard);
+          int alive = 0;//bitmask of players in the round before the action, for elimination events
+          if(listeners.length!=0){
+            for(int p = 0; p<numPlayers; p++) if(!gameState.eliminated(p)) alive |= 1<<p;
+            for(GameListener l: listeners) l.draw(gameState.nextPlayer(), topCard);
+          }
+          Action act;
+          if(Metrics.enabled()){
+            int actor = gameState.nextPlayer();
+            if(latency[actor]==null){
+              latency[actor] = Metrics.decisionLatency(agents[actor].toString());
+              allocation[actor] = Metrics.decisionAllocation(agents[actor].toString());
+            }
+            long bytes = Metrics.allocatedBytes();
+            long start = System.nanoTime();
+            act = agents[actor].playCard(topCard);
+            latency[actor].record(System.nanoTime()-start);
+            allocation[actor].record(Metrics.allocatedBytes()-bytes);
+          }
+          else act = agents[gameState.nextPlayer()].playCard(topCard);
           try{
-            ps.println(gameState.update(act,topCard));
+            String outcome = gameState.update(act,topCard);
+            if(verbose) ps.println(outcome);
           }
           catch(IllegalActionException e){
-            ps.println("ILLEGAL ACTION PERFORMED BY PLAYER "+agents[gameState.nextPlayer()]+
+            if(verbose) ps.println("ILLEGAL ACTION PERFORMED BY PLAYER "+agents[gameState.nextPlayer()]+
               "("+gameState.nextPlayer()+")\nRandom Move Substituted");
-            rando.newRound(gameState.playerState(gameState.nextPlayer()));
+            Metrics.ILLEGAL_SUBSTITUTIONS.increment();
+            rando.newRound(playerStates[gameState.nextPlayer()]);
             act = rando.playCard(topCard);
-            ps.println(gameState.update(act,topCard));
+            String outcome = gameState.update(act,topCard);
+            if(verbose) ps.println(outcome);
+          }
+          if(listeners.length!=0){
+            for(GameListener l: listeners) l.action(act, gameState);
+            for(int p = 0; p<numPlayers; p++)
+              if((alive&1<<p)!=0 && gameState.eliminated(p))
+                for(GameListener l: listeners) l.elimination(p, gameState);
           }
           for(int p = 0; p<numPlayers; p++)
             agents[p].see(act,playerStates[p]);
         }
-System.out.println("New Round, scores are:\nplayer 0:"+gameState.score(0)+"\nplayer 1:"+gameState.score(1)+"\nplayer 2:"+gameState.score(2)+"\nplayer 3:"+gameState.score(3));        
+        if(listeners.length!=0){
+          int roundWinner = gameState.roundWinner();
+          for(GameListener l: listeners) l.roundEnd(roundWinner, gameState);
+        }
+        if(verbose){
+          String scores = "New Round, scores are:";
+          for(int p = 0; p<numPlayers; p++) scores += "\nplayer "+p+":"+gameState.score(p);
+          ps.println(scores);
+        }
         gameState.newRound();
       }
-      ps.println("Player "+gameState.gameWinner()+" wins the Princess's heart!");
+      if(verbose) ps.println("Player "+gameState.gameWinner()+" wins the Princess's heart!");
       int[] scoreboard = new int[numPlayers];
       for(int p = 0; p<numPlayers; p++)scoreboard[p] = gameState.score(p);
+      for(GameListener l: listeners) l.gameEnd(gameState.gameWinner(), scoreboard);
       return scoreboard;
     }catch(IllegalActionException e){
-      ps.println("Something has gone wrong.");
-      e.printStackTrace();
+      if(Log.warn()) Log.println("Something has gone wrong: "+e);
       return null;
     } 
   }
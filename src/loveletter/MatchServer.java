@@ -0,0 +1,209 @@
+package loveletter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import agents.RandomAgent;
+
+/**
+ * A long lived host for many concurrent games of LoveLetter.
+ * Every match gets its own LoveLetter engine, and therefore its own State, and runs the
+ * blocking playGame loop on its own thread. Where the JVM supports virtual threads each
+ * match runs on one, so tens of thousands of matches waiting on slow agents do not tie up
+ * platform threads. Elsewhere matches share a fixed pool of platform threads, a few per core,
+ * and admitted matches wait their turn in its queue. Admission is bounded by a fixed number
+ * of match slots.
+ * */
+public class MatchServer{
+
+  private final ConcurrentHashMap<Long,Match> registry;
+  private final Semaphore slots;
+  private final ExecutorService executor;
+  private final AtomicLong nextId;
+  private final boolean virtual;
+
+  /**Platform threads per core when virtual threads are unavailable**/
+  public static final int THREADS_PER_CORE = 4;
+
+  /**
+   * Creates a server that runs at most maxMatches games at once.
+   * @param maxMatches the number of matches that may be in progress at the same time
+   * @throws IllegalArgumentException if maxMatches is not positive
+   * */
+  public MatchServer(int maxMatches){
+    if(maxMatches<1) throw new IllegalArgumentException("maxMatches must be positive");
+    registry = new ConcurrentHashMap<Long,Match>();
+    slots = new Semaphore(maxMatches);
+    nextId = new AtomicLong();
+    ExecutorService ex = virtualExecutor();
+    virtual = ex!=null;
+    int platform = Math.min(maxMatches, THREADS_PER_CORE*Runtime.getRuntime().availableProcessors());
+    executor = virtual?ex:Executors.newFixedThreadPool(platform, new ThreadFactory(){
+      public Thread newThread(Runnable r){
+        Thread t = new Thread(r, "match");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  //looked up reflectively so the server still builds and runs on JVMs without virtual threads
+  private static ExecutorService virtualExecutor(){
+    try{
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }catch(ReflectiveOperationException e){
+      return null;
+    }
+  }
+
+  /**
+   * Starts a match if there is a free slot.
+   * The agents must not be shared with any other running match.
+   * @param agents the players in the match, in seating order
+   * @param seed the seed for the match's deals
+   * @return a handle to the running match, or null if the server is at capacity
+   * */
+  public Match submit(Agent[] agents, long seed){
+    if(!slots.tryAcquire()) return null;
+    Match m = new Match(nextId.incrementAndGet(), agents, seed);
+    registry.put(m.id, m);
+    try{
+      executor.execute(m);
+    }catch(RuntimeException e){
+      registry.remove(m.id);
+      slots.release();
+      throw e;
+    }
+    return m;
+  }
+
+  /**
+   * Looks up a match that is still in progress.
+   * @param id the identifier of the match
+   * @return the match, or null if it has finished or was never started
+   * */
+  public Match get(long id){return registry.get(id);}
+
+  /**
+   * @return a snapshot of the matches currently in progress
+   * */
+  public Collection<Match> activeMatches(){return new ArrayList<Match>(registry.values());}
+
+  /**
+   * @return the number of matches currently in progress
+   * */
+  public int activeCount(){return registry.size();}
+
+  /**
+   * @return true if matches run on virtual threads
+   * */
+  public boolean isVirtual(){return virtual;}
+
+  /**
+   * Stops accepting matches.
+   * Matches already being played run on to the end, since the engine does not check for interrupts.
+   * Matches still waiting for a thread are dropped: they finish without scores, with a failure saying so.
+   * */
+  public void shutdown(){
+    for(Runnable r: executor.shutdownNow())
+      if(r instanceof Match) ((Match)r).abandon();
+  }
+
+  /**
+   * A single game hosted by the server.
+   * */
+  public class Match implements Runnable{
+    private final long id;
+    private final Agent[] agents;
+    private final long seed;
+    private final CountDownLatch done;
+    private volatile int[] scores;
+    private volatile RuntimeException failure;
+
+    private Match(long id, Agent[] agents, long seed){
+      this.id = id;
+      this.agents = agents;
+      this.seed = seed;
+      done = new CountDownLatch(1);
+    }
+
+    public void run(){
+      try{
+        LoveLetter env = new LoveLetter(seed, null);
+        scores = env.playGame(agents);
+      }catch(RuntimeException e){//kept for the caller rather than lost on the match's thread
+        failure = e;
+        if(Log.warn()) Log.println("Match "+id+" failed: "+e);
+      }finally{
+        finish();
+      }
+    }
+
+    //a match dropped from the queue never runs, so it is finished here instead
+    private void abandon(){
+      failure = new IllegalStateException("Match "+id+" was dropped when the server shut down");
+      finish();
+    }
+
+    private void finish(){
+      registry.remove(id);
+      slots.release();
+      done.countDown();
+    }
+
+    /**
+     * @return the identifier of the match
+     * */
+    public long id(){return id;}
+
+    /**
+     * @return true if the match has finished
+     * */
+    public boolean isDone(){return done.getCount()==0;}
+
+    /**
+     * Waits for the match to finish.
+     * @return the final scores, or null if the game failed, in which case failure gives any exception that ended it
+     * @throws InterruptedException if interrupted while waiting
+     * */
+    public int[] result() throws InterruptedException{
+      done.await();
+      return scores;
+    }
+
+    /**
+     * @return the exception that ended the match, or null if it finished or has not yet
+     * */
+    public RuntimeException failure(){return failure;}
+  }
+
+  /**
+   * Hosts a batch of random agent games and reports the throughput.
+   * @param args the number of games and the number of match slots, by default a thousand
+   * */
+  public static void main(String[] args) throws InterruptedException{
+    int games = args.length>0?Integer.parseInt(args[0]):10000;
+    int slots = args.length>1?Integer.parseInt(args[1]):Math.min(games, 1000);
+    MatchServer server = new MatchServer(slots);
+    Match[] matches = new Match[games];
+    long start = System.nanoTime();
+    for(int i = 0; i<games; i++){
+      Agent[] agents = {new RandomAgent(), new RandomAgent(), new RandomAgent(), new RandomAgent()};
+      while((matches[i] = server.submit(agents, i))==null) Thread.sleep(1);
+    }
+    int failed = 0, crashed = 0;
+    for(Match m: matches){
+      if(m.result()==null) failed++;
+      if(m.failure()!=null) crashed++;
+    }
+    long ms = (System.nanoTime()-start)/1000000;
+    System.out.println(games+" games in "+ms+"ms on "+(server.isVirtual()?"virtual":"platform")+" threads, "+failed+" failed, "+crashed+" by exception");
+    server.shutdown();
+  }
+}
@@ -0,0 +1,226 @@
+package loveletter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Low overhead counters and histograms for the game engine and agents.
+ * Recording is off by default and can be switched on and off at runtime,
+ * either directly or through JMX once registerMBean has been called.
+ * When off, every recording call is a single volatile read and branch.
+ * Values are pulled with snapshot(); rates are found by comparing two snapshots.
+ * */
+public final class Metrics{
+
+  private static volatile boolean enabled;
+  private static final ConcurrentHashMap<String,Object> registry = new ConcurrentHashMap<String,Object>();
+  private static final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  /**Actions applied by State.update**/
+  public static final Counter STATE_UPDATES = counter("engine.stateUpdates");
+  /**Illegal actions replaced with a random move by the engine**/
+  public static final Counter ILLEGAL_SUBSTITUTIONS = counter("engine.illegalSubstitutions");
+  /**Search iterations completed by MCTS agents**/
+  public static final Counter MCTS_ITERATIONS = counter("mcts.iterations");
+  /**Nanoseconds spent in MCTS searches**/
+  public static final Counter MCTS_NANOS = counter("mcts.nanos");
+  /**Nodes in each finished MCTS tree**/
+  public static final Histogram MCTS_TREE_SIZE = histogram("mcts.treeSize");
+  /**Turns played in each MCTS rollout**/
+  public static final Histogram ROLLOUT_LENGTH = histogram("mcts.rolloutLength");
+
+  private Metrics(){}
+
+  /**
+   * @return true if metrics are being recorded
+   * **/
+  public static boolean enabled(){return enabled;}
+
+  /**
+   * Switches recording on or off.
+   * @param on true to record metrics
+   * **/
+  public static void setEnabled(boolean on){enabled = on;}
+
+  /**
+   * Finds or creates a counter.
+   * @param name the name the counter is reported under
+   * @return the counter
+   * **/
+  public static Counter counter(String name){
+    Object m = registry.computeIfAbsent(name, k -> new Counter());
+    return (Counter)m;
+  }
+
+  /**
+   * Finds or creates a histogram.
+   * @param name the name the histogram is reported under
+   * @return the histogram
+   * **/
+  public static Histogram histogram(String name){
+    Object m = registry.computeIfAbsent(name, k -> new Histogram());
+    return (Histogram)m;
+  }
+
+  /**
+   * The time, in nanoseconds, each agent takes to choose an action.
+   * @param agent the agent's name
+   * @return the histogram for that agent
+   * **/
+  public static Histogram decisionLatency(String agent){return histogram("agent."+agent+".decisionNanos");}
+
+  /**
+   * The bytes each agent allocates while choosing an action.
+   * @param agent the agent's name
+   * @return the histogram for that agent
+   * **/
+  public static Histogram decisionAllocation(String agent){return histogram("agent."+agent+".decisionBytes");}
+
+  /**
+   * The bytes allocated by the current thread so far, where the JVM reports it.
+   * @return the allocated bytes, or 0 if unsupported
+   * **/
+  public static long allocatedBytes(){
+    if(threads instanceof com.sun.management.ThreadMXBean)
+      return ((com.sun.management.ThreadMXBean)threads).getCurrentThreadAllocatedBytes();
+    return 0;
+  }
+
+  /**
+   * Reads every metric, along with the collector counts and times of the JVM.
+   * @return the current values by name
+   * **/
+  public static Map<String,Long> snapshot(){
+    TreeMap<String,Long> snap = new TreeMap<String,Long>();
+    snap.put("timeNanos", System.nanoTime());
+    for(Map.Entry<String,Object> e: registry.entrySet()){
+      if(e.getValue() instanceof Counter) snap.put(e.getKey(), ((Counter)e.getValue()).get());
+      else ((Histogram)e.getValue()).snapshot(e.getKey(), snap);
+    }
+    long gcCount = 0, gcTime = 0;
+    for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+      gcCount += Math.max(0, gc.getCollectionCount());
+      gcTime += Math.max(0, gc.getCollectionTime());
+    }
+    snap.put("jvm.gcCount", gcCount);
+    snap.put("jvm.gcMillis", gcTime);
+    return snap;
+  }
+
+  /**
+   * Clears every metric.
+   * **/
+  public static void reset(){
+    for(Object m: registry.values()){
+      if(m instanceof Counter) ((Counter)m).adder.reset();
+      else ((Histogram)m).reset();
+    }
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server as loveletter:type=Metrics.
+   * **/
+  public static void registerMBean(){
+    try{
+      ObjectName name = new ObjectName("loveletter:type=Metrics");
+      if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+    }catch(JMException e){
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The JMX view of the metrics.
+   * */
+  public interface MetricsMXBean{
+    boolean isEnabled();
+    void setEnabled(boolean on);
+    Map<String,Long> getSnapshot();
+    void reset();
+  }
+
+  private static class MBean implements MetricsMXBean{
+    public boolean isEnabled(){return Metrics.enabled();}
+    public void setEnabled(boolean on){Metrics.setEnabled(on);}
+    public Map<String,Long> getSnapshot(){return Metrics.snapshot();}
+    public void reset(){Metrics.reset();}
+  }
+
+  /**
+   * A monotonically increasing count.
+   * */
+  public static final class Counter{
+    private final LongAdder adder = new LongAdder();
+
+    private Counter(){}
+
+    /**adds one if metrics are enabled**/
+    public void increment(){if(enabled) adder.increment();}
+
+    /**@param n the amount to add if metrics are enabled**/
+    public void add(long n){if(enabled) adder.add(n);}
+
+    /**@return the current count**/
+    public long get(){return adder.sum();}
+  }
+
+  /**
+   * A distribution of non-negative values in power of two buckets.
+   * */
+  public static final class Histogram{
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    private Histogram(){
+      buckets = new LongAdder[65];
+      for(int i = 0; i<buckets.length; i++) buckets[i] = new LongAdder();
+      sum = new LongAdder();
+      max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**@param value the value to record if metrics are enabled**/
+    public void record(long value){
+      if(!enabled) return;
+      if(value<0) value = 0;
+      buckets[64-Long.numberOfLeadingZeros(value)].increment();
+      sum.add(value);
+      max.accumulate(value);
+    }
+
+    private void reset(){
+      for(LongAdder b: buckets) b.reset();
+      sum.reset();
+      max.reset();
+    }
+
+    //percentiles are reported as the upper bound of the bucket they fall in
+    private void snapshot(String name, Map<String,Long> snap){
+      long[] counts = new long[buckets.length];
+      long count = 0;
+      for(int i = 0; i<counts.length; i++) count += counts[i] = buckets[i].sum();
+      snap.put(name+".count", count);
+      snap.put(name+".sum", sum.sum());
+      snap.put(name+".max", max.get());
+      snap.put(name+".p50", percentile(counts, count, 0.5));
+      snap.put(name+".p99", percentile(counts, count, 0.99));
+    }
+
+    private static long percentile(long[] counts, long count, double q){
+      long rank = (long)Math.ceil(q*count), seen = 0;
+      for(int i = 0; i<counts.length; i++){
+        seen += counts[i];
+        if(seen>=rank && counts[i]>0) return i==0?0:i==64?Long.MAX_VALUE:(1L<<i)-1;
+      }
+      return 0;
+    }
+  }
+}
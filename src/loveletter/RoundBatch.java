@@ -0,0 +1,336 @@
+package loveletter;
+
+import java.util.Random;
+import agents.RandomAgent;
+
+/**
+ * Plays many independent rounds between random players at once, for evaluation sweeps.
+ * Rather than a State and an agent per seat for every round, the batch holds each round as a
+ * column of primitive arrays: decks and hands as card values, and who is still in and who is
+ * protected as one bitmask per round. A call to step advances every unfinished round by one turn,
+ * in passes over the arrays that draw, choose, apply and settle in turn, and finished rounds are
+ * compacted out so the passes only visit live ones. Nothing is allocated after construction.
+ * Players choose as RandomAgent does, uniformly among the legal pairs of card and target with a
+ * uniform guess for the Guard, and the rules are those of State.update, so round outcomes are
+ * distributed as the engine's are. Round r is shuffled and played from its own generator, seeded
+ * by r, so results do not depend on how many rounds are batched together. Run with
+ * <pre>java loveletter.RoundBatch [rounds] [players] [ruleset] [lanes]</pre>
+ * to compare its speed and win shares, by seat from the starting player, with stepping State objects.
+ * */
+public final class RoundBatch{
+
+  private final int lanes; //rounds held at once
+  private final int num; //players per round
+  private final int cards; //cards in the deck
+  private final byte[] pack; //the deck in order, by card value
+  private final byte[] deck; //each round's shuffled deck, cards per round
+  private final byte[] hand; //each player's card by round, num per round, or 0 once eliminated
+  private final int[] discarded; //total value each player has discarded, num per round, to break ties
+  private final int[] top; //index of the top of each round's deck
+  private final int[] alive; //bitmask of players still in each round
+  private final int[] handmaid; //bitmask of players protected in each round
+  private final int[] next; //the player to act in each round
+  private final int[] turns; //turns played in each round
+  private final int[] winner; //the winner of each round, or -1 while it is being played
+  private final long[] seed; //each round's random number generator state
+  private final byte[] drawn; //the card drawn this turn
+  private final byte[] played; //the card played this turn
+  private final byte[] target; //the target this turn
+  private final byte[] guess; //the Guard's guess this turn
+  private final int[] live; //the rounds still being played, in order
+  private int liveCount;
+
+  /**
+   * Creates a batch.
+   * @param lanes how many rounds to play at once
+   * @param numPlayers the number of players in each round
+   * @param rules the deck to play with
+   * @throws IllegalArgumentException if the ruleset does not allow that many players
+   * **/
+  public RoundBatch(int lanes, int numPlayers, Ruleset rules){
+    if(numPlayers<rules.minPlayers() || numPlayers>rules.maxPlayers())
+      throw new IllegalArgumentException("incorrect number of players");
+    this.lanes = lanes;
+    num = numPlayers;
+    cards = rules.deckSize();
+    pack = new byte[cards];
+    int j = 0;
+    for(int v = 1; v<=8; v++)
+      for(int k = 0; k<rules.count(v); k++)
+        pack[j++] = (byte)v;
+    deck = new byte[lanes*cards];
+    hand = new byte[lanes*num];
+    discarded = new int[lanes*num];
+    top = new int[lanes];
+    alive = new int[lanes];
+    handmaid = new int[lanes];
+    next = new int[lanes];
+    turns = new int[lanes];
+    winner = new int[lanes];
+    seed = new long[lanes];
+    drawn = new byte[lanes];
+    played = new byte[lanes];
+    target = new byte[lanes];
+    guess = new byte[lanes];
+    live = new int[lanes];
+  }
+
+  /**
+   * @return how many rounds are played at once
+   * **/
+  public int lanes(){return lanes;}
+
+  /**
+   * Deals a new round into every lane, lane i playing round firstRound+i.
+   * @param firstRound the number of the round dealt into lane 0, which seeds its shuffle and play
+   * @param starter the player who takes the first turn
+   * **/
+  public void deal(long firstRound, int starter){
+    for(int i = 0; i<lanes; i++){
+      seed[i] = mix(firstRound+i);
+      int d = i*cards;
+      System.arraycopy(pack, 0, deck, d, cards);
+      for(int k = cards-1; k>0; k--){//Fisher-Yates shuffle
+        int r = nextInt(i, k+1);
+        byte c = deck[d+k];
+        deck[d+k] = deck[d+r];
+        deck[d+r] = c;
+      }
+      int h = i*num;
+      for(int p = 0; p<num; p++){
+        hand[h+p] = deck[d+p];
+        discarded[h+p] = 0;
+      }
+      top[i] = num;
+      alive[i] = (1<<num)-1;
+      handmaid[i] = 0;
+      next[i] = starter;
+      turns[i] = 0;
+      winner[i] = -1;
+      live[i] = i;
+    }
+    liveCount = lanes;
+  }
+
+  /**
+   * Plays one turn of every round still being played.
+   * @return the number of rounds still being played
+   * **/
+  public int step(){
+    int n = liveCount;
+    for(int k = 0; k<n; k++){//draw
+      int i = live[k];
+      drawn[i] = deck[i*cards+top[i]++];
+      handmaid[i] &= ~(1<<next[i]);//protection lasts until the player's next turn
+    }
+    for(int k = 0; k<n; k++) choose(live[k]);
+    for(int k = 0; k<n; k++) apply(live[k]);
+    int kept = 0;
+    for(int k = 0; k<n; k++){//settle
+      int i = live[k];
+      turns[i]++;
+      int al = alive[i];
+      if((al&al-1)==0 || cards-top[i]<2) winner[i] = roundWinner(i);
+      else{
+        int p = next[i];
+        do p = p+1==num?0:p+1; while((al>>p&1)==0);
+        next[i] = p;
+        live[kept++] = i;
+      }
+    }
+    liveCount = kept;
+    return kept;
+  }
+
+  /**
+   * Deals and plays a round in every lane to the end.
+   * @param firstRound the number of the round dealt into lane 0
+   * @param starter the player who takes the first turn
+   * **/
+  public void play(long firstRound, int starter){
+    deal(firstRound, starter);
+    while(step()>0);
+  }
+
+  /**
+   * @param lane a lane of the batch
+   * @return the winner of the lane's round, or -1 if it is still being played
+   * **/
+  public int winner(int lane){return winner[lane];}
+
+  /**
+   * @param lane a lane of the batch
+   * @return the turns played in the lane's round so far
+   * **/
+  public int turns(int lane){return turns[lane];}
+
+  //chooses a card and target as RandomAgent does: a card of the two at random and a seat at random, until the pair is legal
+  private void choose(int i){
+    int a = next[i];
+    int h = hand[i*num+a], d = drawn[i];
+    int others = alive[i]&~(1<<a);
+    int open = others&~handmaid[i];
+    if(open==0) open = others;//with everyone else protected, they may be targeted to no effect
+    int princeTargets = alive[i]&~handmaid[i]|1<<a;
+    boolean countess = h==7 || d==7;
+    while(true){
+      long r = next(i);
+      int c = (r&1)==0?d:h;
+      int t = (int)(((r>>>32)*num)>>>32);
+      boolean legal;
+      switch(c){
+        case 8: legal = h==d; break;//the Princess is only played when both cards are Princesses
+        case 4: case 7: legal = true; break;
+        case 5: legal = !countess && (princeTargets>>t&1)!=0; break;
+        case 6: legal = !countess && (open>>t&1)!=0; break;
+        default: legal = (open>>t&1)!=0;
+      }
+      if(legal){
+        played[i] = (byte)c;
+        target[i] = (byte)t;
+        if(c==1) guess[i] = (byte)(2+nextInt(i, 7));
+        return;
+      }
+    }
+  }
+
+  //applies the chosen action, as State.update does
+  private void apply(int i){
+    int a = next[i];
+    int base = i*num;
+    int c = played[i], t = target[i];
+    discarded[base+a] += c;
+    if(c==hand[base+a]) hand[base+a] = drawn[i];
+    boolean shielded = (alive[i]&~handmaid[i]&~(1<<a))==0;//no one else may be affected
+    switch(c){
+      case 1:
+        if(!shielded && hand[base+t]==guess[i]) eliminate(i, t);
+        break;
+      case 3:
+        if(!shielded){
+          int x = hand[base+a], y = hand[base+t];
+          if(x>y) eliminate(i, t);
+          else if(x<y) eliminate(i, a);
+        }
+        break;
+      case 4:
+        handmaid[i] |= 1<<a;
+        break;
+      case 5:
+        int x = hand[base+t];
+        discarded[base+t] += x;
+        if(x==8) eliminate(i, t);
+        else hand[base+t] = deck[i*cards+top[i]++];
+        break;
+      case 6:
+        if(!shielded){
+          byte tmp = hand[base+a];
+          hand[base+a] = hand[base+t];
+          hand[base+t] = tmp;
+        }
+        break;
+      case 8:
+        eliminate(i, a);
+        break;
+      default://the Priest and Countess change nothing a random player would notice
+    }
+  }
+
+  private void eliminate(int i, int p){
+    hand[i*num+p] = 0;
+    alive[i] &= ~(1<<p);
+  }
+
+  //the highest card wins, then the highest discard total, then the lowest seat, as in State.roundWinner
+  private int roundWinner(int i){
+    int base = i*num;
+    int best = -1, bestCard = -1, bestDiscard = -1;
+    for(int p = 0; p<num; p++){
+      int c = hand[base+p];
+      if(c==0) continue;
+      if(c>bestCard || (c==bestCard && discarded[base+p]>bestDiscard)){
+        best = p;
+        bestCard = c;
+        bestDiscard = discarded[base+p];
+      }
+    }
+    return best;
+  }
+
+  //splitmix64, one generator per lane
+  private long next(int i){
+    return mix(seed[i] += 0x9E3779B97F4A7C15L);
+  }
+
+  private int nextInt(int i, int bound){
+    return (int)(((next(i)>>>32)*bound)>>>32);
+  }
+
+  private static long mix(long z){
+    z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+    z = (z^(z>>>27))*0x94D049BB133111EBL;
+    return z^(z>>>31);
+  }
+
+  /**
+   * Plays rounds between random players, first batched and then through State and RandomAgent,
+   * and reports the speed of each and how often each seat won, counting from the player who started.
+   * @param args the number of rounds, players, the ruleset and the lanes per batch
+   * **/
+  public static void main(String[] args){
+    int rounds = args.length>0?Integer.parseInt(args[0]):1000000;
+    int players = args.length>1?Integer.parseInt(args[1]):4;
+    Ruleset rules = args.length>2?Ruleset.forName(args[2]):Ruleset.CLASSIC;
+    int lanes = args.length>3?Integer.parseInt(args[3]):4096;
+    Log.setLevel(Log.Level.QUIET);
+
+    RoundBatch batch = new RoundBatch(lanes, players, rules);
+    long[] wins = new long[players];
+    long turns = 0;
+    long start = System.nanoTime();
+    for(long r = 0; r<rounds; r += lanes){
+      batch.play(r, 0);
+      int n = (int)Math.min(lanes, rounds-r);
+      for(int i = 0; i<n; i++){
+        wins[batch.winner(i)]++;
+        turns += batch.turns(i);
+      }
+    }
+    report("batched", rounds, turns, wins, System.nanoTime()-start);
+
+    Agent[] agents = new Agent[players];
+    for(int p = 0; p<players; p++) agents[p] = new RandomAgent(p+1);
+    State game = new State(new Random(0), agents, rules);
+    game.describeActions(false);
+    State[] views = new State[players];
+    java.util.Arrays.fill(wins, 0);
+    turns = 0;
+    start = System.nanoTime();
+    try{
+      for(int p = 0; p<players; p++) views[p] = game.playerState(p);
+      for(int r = 0; r<rounds; r++){
+        int starter = game.nextPlayer();//the last round's winner
+        for(int p = 0; p<players; p++) agents[p].newRound(views[p]);
+        while(!game.roundOver()){
+          Card card = game.drawCard();
+          Action act = agents[game.nextPlayer()].playCard(card);
+          game.update(act, card);
+          for(int p = 0; p<players; p++) agents[p].see(act, views[p]);
+          turns++;
+        }
+        wins[(game.roundWinner()-starter+players)%players]++;
+        game.newRound();
+      }
+    }catch(IllegalActionException e){
+      e.printStackTrace();
+      return;
+    }
+    report("state", rounds, turns, wins, System.nanoTime()-start);
+  }
+
+  private static void report(String name, int rounds, long turns, long[] wins, long nanos){
+    StringBuilder sb = new StringBuilder(String.format("%-8s %,12.0f rounds/s, %.2f turns/round, wins by seat", name, rounds*1e9/nanos, (double)turns/rounds));
+    for(long w: wins) sb.append(String.format(" %.4f", (double)w/rounds));
+    System.out.println(sb);
+  }
+}
@@ -0,0 +1,146 @@
+package loveletter;
+
+/**
+ * A description of the deck and scoring a game is played with.
+ * The engine reads it once, when a game starts, to size its buffers and fix the number of tokens
+ * needed to win, so nothing in the play loop looks at it again. The classic ruleset shuffles as
+ * Card.deal does, exactly as before rulesets existed, so classic games with the same seed are unchanged.
+ * Rulesets only vary how many of each card there are and how many players may sit down;
+ * every card keeps its classic ability.
+ * **/
+public final class Ruleset{
+
+  /** The most players any ruleset may seat */
+  public static final int MAX_PLAYERS = 8;
+
+  /** The 16 card game for 2 to 4 players */
+  public static final Ruleset CLASSIC = new Ruleset("classic", new int[]{5,2,2,2,2,1,1,1}, 2, 4, new int[]{0,0,7,5,4});
+
+  /** A house rule for 2 to 8 players: the classic deck twice over, with 3 tokens to win from 5 players up */
+  public static final Ruleset DOUBLE = new Ruleset("double", new int[]{10,4,4,4,4,2,2,2}, 2, 8, new int[]{0,0,7,5,4,3,3,3,3});
+
+  private static final Card[] CARDS = Card.values();//values() copies its array on every call
+
+  private final String name;
+  private final int[] counts;//number of each card in the deck, by value - 1
+  private final int deckSize;
+  private final int minPlayers;
+  private final int maxPlayers;
+  private final int[] thresholds;//tokens needed to win, by number of players
+
+  /**
+   * Describes a ruleset.
+   * @param name the name of the ruleset
+   * @param counts how many of each card are in the deck, from the Guard to the Princess
+   * @param minPlayers the fewest players the ruleset may be played with
+   * @param maxPlayers the most players the ruleset may be played with
+   * @param thresholds the tokens needed to win, indexed by the number of players, up to at least maxPlayers
+   * @throws IllegalArgumentException if the deck cannot give every player a card and leave a card to draw and one unused
+   * **/
+  public Ruleset(String name, int[] counts, int minPlayers, int maxPlayers, int[] thresholds){
+    if(counts.length!=Card.values().length) throw new IllegalArgumentException("A count is needed for every card");
+    if(minPlayers<2 || maxPlayers<minPlayers || maxPlayers>MAX_PLAYERS) throw new IllegalArgumentException("Player counts out of range");
+    if(thresholds.length<=maxPlayers) throw new IllegalArgumentException("A threshold is needed for every number of players");
+    int size = 0;
+    for(int c: counts){
+      if(c<0) throw new IllegalArgumentException("Negative card count");
+      size+=c;
+    }
+    if(size<maxPlayers+2) throw new IllegalArgumentException("Deck too small for "+maxPlayers+" players");
+    this.name = name;
+    this.counts = counts.clone();
+    this.deckSize = size;
+    this.minPlayers = minPlayers;
+    this.maxPlayers = maxPlayers;
+    this.thresholds = thresholds.clone();
+  }
+
+  /**
+   * Looks up a built in ruleset by name.
+   * @param name the name of the ruleset, classic or double
+   * @return the ruleset
+   * @throws IllegalArgumentException if there is no ruleset of that name
+   * **/
+  public static Ruleset forName(String name){
+    if(CLASSIC.name.equals(name)) return CLASSIC;
+    if(DOUBLE.name.equals(name)) return DOUBLE;
+    throw new IllegalArgumentException("Unknown ruleset "+name);
+  }
+
+  /**
+   * @return the number of cards in the deck
+   * **/
+  public int deckSize(){return deckSize;}
+
+  /**
+   * @param card a card
+   * @return the number of times the card appears in the deck
+   * **/
+  public int count(Card card){return counts[card.value()-1];}
+
+  /**
+   * @param value a card value, from 1 for the Guard to 8 for the Princess
+   * @return the number of times the card of that value appears in the deck
+   * **/
+  public int count(int value){return counts[value-1];}
+
+  /**
+   * @return the fewest players the ruleset may be played with
+   * **/
+  public int minPlayers(){return minPlayers;}
+
+  /**
+   * @return the most players the ruleset may be played with
+   * **/
+  public int maxPlayers(){return maxPlayers;}
+
+  /**
+   * @param numPlayers the number of players in the game
+   * @return the tokens a player needs to win the game
+   * **/
+  public int threshold(int numPlayers){return thresholds[numPlayers];}
+
+  /**
+   * Creates a shuffled deck of cards.
+   * @param rand a random number generator to shuffle the deck
+   * @return the ruleset's deck, in random order
+   * **/
+  public Card[] deal(java.util.Random rand){
+    return deal(rand, new Card[deckSize]);
+  }
+
+  /**
+   * Shuffles a deck of cards into an existing array, so a game can deal every round into the same one.
+   * @param rand a random number generator to shuffle the deck
+   * @param deck an array of at least deckSize cards, whose first deckSize are overwritten
+   * @return deck, holding the ruleset's deck in random order
+   * **/
+  public Card[] deal(java.util.Random rand, Card[] deck){
+    int j = 0;
+    for(Card c: CARDS)
+      for(int i = 0; i<counts[c.value()-1]; i++)
+        deck[j++] = c;
+    if(this==CLASSIC){//the swaps Card.deal makes, so classic deals are unchanged
+      for(int i = 0; i<200; i++){
+        int index1 = rand.nextInt(deckSize);
+        int index2 = rand.nextInt(deckSize);
+        Card c = deck[index1];
+        deck[index1] = deck[index2];
+        deck[index2] = c;
+      }
+      return deck;
+    }
+    for(int i = deckSize-1; i>0; i--){//Fisher-Yates shuffle
+      int k = rand.nextInt(i+1);
+      Card c = deck[i];
+      deck[i] = deck[k];
+      deck[k] = c;
+    }
+    return deck;
+  }
+
+  /**
+   * @return the name of the ruleset
+   * **/
+  public String toString(){return name;}
+}
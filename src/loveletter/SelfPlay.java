@@ -0,0 +1,349 @@
+package loveletter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates training data by playing games between a mix of agents on several threads.
+ * Every action taken becomes one fixed width record of what the acting player could see,
+ * what they did and whether they went on to win the round. Each worker writes its own file,
+ * selfplay-N.bin in the output directory. Full buffers are handed to a single writer thread
+ * through a bounded queue; when the disk falls behind, workers block until a buffer is free,
+ * so memory stays bounded however long the run.
+ * A file starts with a 16 byte header: the magic number, the format version, the record size and
+ * the number of seats. Each record, with seats relative to the acting player, is
+ * <pre>
+ * 0  int   round number within the worker
+ * 4  byte  acting player's seat
+ * 5  byte  number of players
+ * 6  byte  index of the acting agent in the mix
+ * 7  byte  cards left in the deck before the draw
+ * 8  byte  card in hand
+ * 9  byte  card drawn
+ * 10 byte  card played
+ * 11 byte  target seat + 1, 0 for none
+ * 12 byte  guessed card, 0 for none
+ * 13 byte  round winner's seat
+ * 14 byte  1 if the acting player won the round
+ * 15 byte  acting player's score before the round
+ * then for each seat: known card (0 if unknown), flags (1 in the round, 2 protected), discard total, discard count
+ * </pre>
+ * Cards are stored by value. Run with
+ * <pre>java loveletter.SelfPlay [games] [workers] [directory] [mix]</pre>
+ * where the mix is a list of agent classes and weights such as RandomAgent:3,GodV1:1; each seat
+ * of each game is filled by drawing from it.
+ * */
+public class SelfPlay{
+
+  private static final int MAGIC = 0x4C4C5350;//"LLSP"
+  private static final int VERSION = 1;
+  private static final int HEADER = 16;
+  private static final int BUFFER = 1<<16;
+
+  /**Records written**/
+  public static final Metrics.Counter RECORDS = Metrics.counter("selfplay.records");
+  /**Games abandoned because an agent failed; records of their unfinished round are dropped**/
+  public static final Metrics.Counter FAILED_GAMES = Metrics.counter("selfplay.failedGames");
+  /**Nanoseconds workers spent waiting for a free buffer**/
+  public static final Metrics.Counter STALL_NANOS = Metrics.counter("selfplay.stallNanos");
+
+  private final String[] agentNames;
+  private final int[] weights;
+  private final int seats;
+  private final int recordSize;
+  private final ArrayBlockingQueue<Chunk> full;//buffers waiting to be written
+  private final ArrayBlockingQueue<ByteBuffer> free;//buffers ready to be filled
+
+  /**
+   * Creates a generator.
+   * @param mix agent class names, in the agents package unless qualified, each optionally followed by :weight
+   * @param seats the number of players in each game
+   * @param buffers the number of buffers shared by all workers, which bounds memory use
+   * @throws IllegalArgumentException if an agent in the mix cannot be created
+   * */
+  public SelfPlay(String mix, int seats, int buffers){
+    String[] parts = mix.split(",");
+    agentNames = new String[parts.length];
+    weights = new int[parts.length];
+    for(int i = 0; i<parts.length; i++){
+      String[] nw = parts[i].trim().split(":");
+      agentNames[i] = nw[0].contains(".")?nw[0]:"agents."+nw[0];
+      weights[i] = nw.length>1?Integer.parseInt(nw[1]):1;
+      newAgent(i);//fail now rather than on a worker
+    }
+    this.seats = seats;
+    recordSize = HEADER+4*seats;
+    full = new ArrayBlockingQueue<Chunk>(buffers);
+    free = new ArrayBlockingQueue<ByteBuffer>(buffers);
+    for(int i = 0; i<buffers; i++) free.add(ByteBuffer.allocateDirect(BUFFER-BUFFER%recordSize));
+  }
+
+  /**
+   * @return the size in bytes of each record
+   * */
+  public int recordSize(){return recordSize;}
+
+  private Agent newAgent(int type){
+    try{
+      return (Agent)Class.forName(agentNames[type]).getDeclaredConstructor().newInstance();
+    }catch(ReflectiveOperationException|ClassCastException e){
+      throw new IllegalArgumentException("Cannot create agent "+agentNames[type], e);
+    }
+  }
+
+  /**
+   * Plays the games and writes the records, returning when everything is on disk.
+   * @param games the number of games to play
+   * @param workers the number of threads playing games
+   * @param dir the directory for the output files
+   * @param seed the seed games and seatings are derived from
+   * @return the number of records written
+   * @throws IOException if a file cannot be written
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * */
+  public long run(int games, int workers, Path dir, long seed) throws IOException, InterruptedException{
+    Files.createDirectories(dir);
+    FileChannel[] files = new FileChannel[workers];
+    for(int w = 0; w<workers; w++){
+      files[w] = FileChannel.open(dir.resolve("selfplay-"+w+".bin"),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(VERSION).putInt(recordSize).putInt(seats).flip();
+      while(header.hasRemaining()) files[w].write(header);
+    }
+    Writer writer = new Writer();
+    Thread writerThread = new Thread(writer, "selfplay-writer");
+    writerThread.start();
+    AtomicInteger next = new AtomicInteger();
+    Worker[] pool = new Worker[workers];
+    Thread[] threads = new Thread[workers];
+    for(int w = 0; w<workers; w++){
+      pool[w] = new Worker(files[w], next, games, seed+w);
+      threads[w] = new Thread(pool[w], "selfplay-"+w);
+      threads[w].start();
+    }
+    long records = 0;
+    for(int w = 0; w<workers; w++){
+      threads[w].join();
+      records += pool[w].records;
+    }
+    full.put(new Chunk(null, null));//no more buffers
+    writerThread.join();
+    for(FileChannel f: files) f.close();
+    if(writer.error!=null) throw writer.error;
+    for(Worker w: pool) if(w.error!=null) throw new IOException("Worker failed", w.error);
+    return records;
+  }
+
+  //carries an interrupt out of a game listener, whose methods cannot throw it
+  private static class Stopped extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+    final InterruptedException interrupt;
+    Stopped(InterruptedException interrupt){this.interrupt = interrupt;}
+  }
+
+  //a filled buffer and the file it belongs to
+  private static class Chunk{
+    final ByteBuffer buf;
+    final FileChannel file;
+    Chunk(ByteBuffer buf, FileChannel file){this.buf = buf; this.file = file;}
+  }
+
+  //drains full buffers to their files and returns them to the pool
+  private class Writer implements Runnable{
+    volatile IOException error;
+
+    public void run(){
+      try{
+        while(true){
+          Chunk c = full.take();
+          if(c.buf==null) return;
+          c.buf.flip();
+          try{
+            while(c.buf.hasRemaining()) c.file.write(c.buf);
+          }catch(IOException e){
+            if(error==null) error = e;//keep draining so workers never block forever
+          }
+          c.buf.clear();
+          free.put(c.buf);
+        }
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  //plays games, recording each round's actions and flushing them once the round's winner is known
+  private class Worker implements Runnable, GameListener{
+    private final FileChannel file;
+    private final AtomicInteger next;
+    private final int games;
+    private final Random random;
+    private final int[] seating;//agent type in each seat of the current game
+    private final byte[] round;//records of the current round, whose outcomes are filled in at the end
+    private int roundRecords;
+    private int roundNumber;
+    private final byte[] pending;//what the next player can see before they draw
+    private int pendingScore;
+    private ByteBuffer buf;
+    long records;
+    Throwable error;
+
+    Worker(FileChannel file, AtomicInteger next, int games, long seed){
+      this.file = file;
+      this.next = next;
+      this.games = games;
+      random = new Random(seed);
+      seating = new int[seats];
+      round = new byte[recordSize*64];
+      pending = new byte[recordSize];
+    }
+
+    public void run(){
+      try{
+        buf = take();
+        Agent[] agents = new Agent[seats];
+        int g;
+        while((g = next.getAndIncrement())<games){
+          for(int s = 0; s<seats; s++){
+            seating[s] = pickType();
+            agents[s] = newAgent(seating[s]);
+          }
+          LoveLetter env = new LoveLetter(random.nextLong(), null);
+          env.addListener(this);
+          try{
+            env.playGame(agents);
+          }catch(Stopped e){
+            throw e.interrupt;//an interrupt ends the worker rather than the game
+          }catch(RuntimeException|StackOverflowError e){//a broken agent should cost one game, not the run
+            FAILED_GAMES.increment();
+          }
+        }
+        if(buf.position()>0) full.put(new Chunk(buf, file));
+        else free.put(buf);
+      }catch(InterruptedException e){
+        error = e;
+        Thread.currentThread().interrupt();
+      }catch(RuntimeException e){
+        error = e;
+      }
+    }
+
+    private int pickType(){
+      int total = 0;
+      for(int w: weights) total += w;
+      int r = random.nextInt(total);
+      int t = 0;
+      while(r>=weights[t]) r -= weights[t++];
+      return t;
+    }
+
+    private ByteBuffer take() throws InterruptedException{
+      ByteBuffer b = free.poll();
+      if(b!=null) return b;
+      long start = System.nanoTime();
+      b = free.take();
+      STALL_NANOS.add(System.nanoTime()-start);
+      return b;
+    }
+
+    public void roundStart(State state){
+      roundRecords = 0;
+      roundNumber++;
+      observe(state);
+    }
+
+    public void draw(int player, Card card){
+      pending[9] = (byte)card.value();
+    }
+
+    public void action(Action act, State state){
+      if(roundRecords*recordSize<round.length){
+        int base = roundRecords++*recordSize;
+        System.arraycopy(pending, 0, round, base, recordSize);
+        int mover = pending[4];
+        round[base+10] = (byte)act.card().value();
+        round[base+11] = (byte)(act.target()==-1?0:(act.target()-mover+seats)%seats+1);
+        round[base+12] = (byte)(act.guess()==null?0:act.guess().value());
+      }
+      observe(state);
+    }
+
+    public void roundEnd(int winner, State state){
+      try{
+        for(int r = 0; r<roundRecords; r++){
+          int base = r*recordSize;
+          int mover = round[base+4];
+          round[base+13] = (byte)((winner-mover+seats)%seats);
+          round[base+14] = (byte)(winner==mover?1:0);
+          if(buf.remaining()<recordSize){
+            full.put(new Chunk(buf, file));
+            buf = take();
+          }
+          buf.put(round, base, recordSize);
+        }
+      }catch(InterruptedException e){
+        throw new Stopped(e);//carried out of the game to run, which stops the worker
+      }
+      records += roundRecords;
+      RECORDS.add(roundRecords);
+      roundRecords = 0;
+    }
+
+    //fills pending with what the player about to move can see, read from the engine's state without a view
+    private void observe(State state){
+      int mover = state.nextPlayer();
+      pending[0] = (byte)(roundNumber>>>24);
+      pending[1] = (byte)(roundNumber>>>16);
+      pending[2] = (byte)(roundNumber>>>8);
+      pending[3] = (byte)roundNumber;
+      pending[4] = (byte)mover;
+      pending[5] = (byte)seats;
+      pending[6] = (byte)seating[mover];
+      pending[7] = (byte)state.deckSize();
+      Card hand = state.getCard(mover);
+      pending[8] = (byte)(hand==null?0:hand.value());
+      pending[9] = 0;
+      pending[15] = (byte)state.score(mover);
+      for(int r = 0; r<seats; r++){
+        int p = (mover+r)%seats;
+        int base = HEADER+4*r;
+        Card known = state.eliminated(p)?null:state.getCard(mover, p);
+        int total = 0, count = state.discardCount(p);
+        for(int i = 0; i<count; i++) total += state.getDiscard(p, i).value();
+        pending[base] = (byte)(known==null?0:known.value());
+        pending[base+1] = (byte)((state.eliminated(p)?0:1)|(state.handmaid(p)?2:0));
+        pending[base+2] = (byte)total;
+        pending[base+3] = (byte)count;
+      }
+    }
+  }
+
+  /**
+   * Runs a generator from the command line.
+   * @param args the number of games, worker threads, output directory and agent mix
+   * @throws Exception if the run fails
+   * */
+  public static void main(String[] args) throws Exception{
+    int games = args.length>0?Integer.parseInt(args[0]):10000;
+    int workers = args.length>1?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+    Path dir = Paths.get(args.length>2?args[2]:"selfplay");
+    String mix = args.length>3?args[3]:"RandomAgent";
+    Log.setLevel(Log.Level.QUIET);//agents' own chatter would swamp the run
+    Metrics.setEnabled(true);
+    SelfPlay generator = new SelfPlay(mix, 4, 4*workers+4);
+    long start = System.nanoTime();
+    long records = generator.run(games, workers, dir, 0);
+    long ms = Math.max(1, (System.nanoTime()-start)/1000000);
+    System.out.println(games+" games, "+records+" records ("+records*generator.recordSize()/1024+" KiB) in "+ms+"ms, "
+      +records*1000/ms+" records/s on "+workers+" workers, "+STALL_NANOS.get()/1000000+"ms waiting for the disk, "+FAILED_GAMES.get()+" games abandoned");
+  }
+}
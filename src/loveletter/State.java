@@ -16,12 +16,17 @@ public class State implements Cloneable{
   private Card[] hand; //the cards players currently hold, or null if the player has been eliminated 
   private Card[] deck; //the deck of remaining cards
   private int[] top; //the index of the top of the deck
-  private boolean[][] known; //whether player knows another players card
-  private boolean[] handmaid;
+  private int[] known; //for each player's card, a bitmask of the players who know it
+  private int[] alive; //bitmask of players still in the round, in a one element array so player states share it
+  private int[] handmaid; //bitmask of players protected by the Handmaid, shared in the same way
   private int[] scores; //the current score of each player
   private java.util.Random random;
   private int[] nextPlayer; //the index of the next player to draw a card (using Object reference so value is shared).
   private Agent[] agents;
+  private boolean describe = true; //whether update builds a description of each action
+  private Ruleset rules; //the deck and scoring in play
+  private int cards; //the number of cards in the deck, read once from the ruleset
+  private int threshold; //the tokens needed to win, read once from the ruleset
 
   /**
    * Default constructor to build the initial observed state for a player
@@ -31,9 +36,24 @@ public class State implements Cloneable{
    * @throws IllegalArgumentException if the array is of the wrong size.
    * */
   public State(java.util.Random random, Agent[] agents){
+    this(random, agents, Ruleset.CLASSIC);
+  }
+
+  /**
+   * Constructor to build the initial state of a game played under the given ruleset
+   * First player in the array will always start
+   * @param random the random number generator for the deals.
+   * @param agents the array of players who start the game, as many as the ruleset allows
+   * @param rules the deck and scoring to play with
+   * @throws IllegalArgumentException if the array is of the wrong size.
+   * */
+  public State(java.util.Random random, Agent[] agents, Ruleset rules){
     num = agents.length;
-    if(num<2 || num>4)
+    if(num<rules.minPlayers() || num>rules.maxPlayers())
       throw new IllegalArgumentException("incorrect number of agents");
+    this.rules = rules;
+    cards = rules.deckSize();
+    threshold = rules.threshold(num);
     this.agents = agents;
     this.random = random;
     player = -1;
@@ -52,29 +72,52 @@ public class State implements Cloneable{
     System.out.println("hand: " + Arrays.toString(hand));
     System.out.println("deck: " + Arrays.toString(deck));
     System.out.println("top: " + Arrays.toString(top));
-    System.out.println("known: " + Arrays.deepToString(known));
-    System.out.println("handmaid: " + Arrays.toString(handmaid));
+    System.out.println("known: " + Arrays.toString(known));
+    System.out.println("alive: " + Integer.toBinaryString(alive[0]));
+    System.out.println("handmaid: " + Integer.toBinaryString(handmaid[0]));
     System.out.println("nextPlayer: " + Arrays.toString(nextPlayer));
     System.out.println("agents: " + Arrays.toString(agents));
   }
 
+  /**
+   * Sets whether update describes the actions it performs.
+   * Turning descriptions off saves building strings that will never be printed.
+   * @param describe true if update should return descriptions, false if it should return null
+   * **/
+  public void describeActions(boolean describe){
+    this.describe = describe;
+  }
+
   /**
    * Resets state for a new round, with new deck of cards, 
    * and everyone's hand and discards reset.
+   * The round's buffers are allocated with the first round and reset in place after that,
+   * so player states made in an earlier round of the game follow the new one.
    * @throws IllegalActionException if this is a player state.
    * **/
   public void newRound() throws IllegalActionException{
     if(this.player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
-    deck = Card.deal(random);
-    discards = new Card[num][16];
-    discardCount = new int[num];
-    hand = new Card[num];
-    handmaid = new boolean[num];
-    top = new int[1];
-    known = new boolean[num][num];
+    if(deck==null){
+      deck = new Card[cards];
+      discards = new Card[num][cards];
+      discardCount = new int[num];
+      hand = new Card[num];
+      alive = new int[1];
+      handmaid = new int[1];
+      top = new int[1];
+      known = new int[num];
+    }
+    rules.deal(random, deck);
+    for(int i = 0; i<num; i++){
+      Arrays.fill(discards[i], 0, discardCount[i], null);
+      discardCount[i] = 0;
+    }
+    alive[0] = (1<<num)-1;
+    handmaid[0] = 0;
+    top[0] = 0;
     for(int i = 0; i<num; i++){
       hand[i] = this.deck[top[0]++];
-      known[i][i] = true;
+      known[i] = 1<<i;
     }
   }
 
@@ -124,10 +167,10 @@ public class State implements Cloneable{
     if((hand[a]==Card.COUNTESS || drawn==Card.COUNTESS) && (c==Card.KING || c==Card.PRINCE))//if one of the cards is the countess, a king or prince may not be played.
       throw new IllegalActionException("Player must play the countess");
     if(t!=-1){//if this action has a target (1,2,3,5,6 cards)
-      if(eliminated(t)) //you cannot target an eliminated player
+      if((alive[0]>>t&1)==0) //you cannot target an eliminated player
         throw new IllegalActionException("The action's target is already eliminated");
       if(c==Card.PRINCE && a==t) return;//a player can always target themselves with the Prince.
-      if(handmaid(t) && (!allHandmaid(a) || c==Card.PRINCE))//you cannot target a player with the handmaid
+      if((handmaid[0]>>t&1)!=0 && (targetable(a)!=0 || c==Card.PRINCE))//you cannot target a player with the handmaid
         throw new IllegalActionException("The action's target is protected by the handmaid");
     } 
   }
@@ -174,12 +217,13 @@ public class State implements Cloneable{
    * May only be called for non-player states (i.e. the omniscient game engine state)
    * @param act the action to be performed
    * @param card the card drawn by the actor
-   * @return a plain English description of the action
+   * @return a plain English description of the action, or null if descriptions are turned off
    * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
    ***/
   public String update(Action act, Card card) throws IllegalActionException{
     if(player!= -1)//Actions may only be executed from game states 
       throw new IllegalActionException("Method cannot be called from a player state");
+    Metrics.STATE_UPDATES.increment();
     int a = act.player();//actor
     int t = act.target();//target
     Card c = act.card();
@@ -192,89 +236,91 @@ public class State implements Cloneable{
     }
     if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
       hand[a]=card;
-      for(int p = 0; p<num; p++)
-        if(p!=a) known[p][a]=false;//rescind players knowledge if a known card was played
+      known[a]=1<<a;//rescind players knowledge if a known card was played
     }
-    handmaid[a]=false;
-    String ret = act.toString(name(a), t!=-1?name(t):"");
+    handmaid[0]&=~(1<<a);
+    String ret = describe?act.toString(name(a), t!=-1?name(t):""):null;
     switch(c){
       case GUARD://actor plays the guard
-        ret+=guardAction(a,t,act.guess());
+        ret=append(ret, guardAction(a,t,act.guess()));
         break;
       case PRIEST:
-        ret+=priestAction(a,t);
+        ret=append(ret, priestAction(a,t));
         break;
       case BARON:
-        ret+=baronAction(a,t);
+        ret=append(ret, baronAction(a,t));
         break;
       case HANDMAID:
-        handmaid[a]=true;
+        handmaid[0]|=1<<a;
         break;
       case PRINCE:
-        ret+= princeAction(t);  
+        ret=append(ret, princeAction(t));
         break;
       case KING:
-        ret+= kingAction(a,t);
+        ret=append(ret, kingAction(a,t));
         break;
       case COUNTESS:  
         //no update required
         break;
       case PRINCESS:
-        ret+= princessAction(a);
+        ret=append(ret, princessAction(a));
         break;
       default: 
         throw new IllegalActionException("Illegal Action? Something's gone very wrong");
     }//end of switch
     if(roundOver()){//check for round over
-      for(int i = 0; i<num; i++)
-       for(int p = 0; p<num; p++) 
-         known[i][p]=true;
+      int everyone = (1<<num)-1;
+      for(int p = 0; p<num; p++) known[p]=everyone;
       int winner = roundWinner();
-      ret+="\nPlayer "+winner+" wins the round.";
+      if(describe) ret+="\nPlayer "+winner+" wins the round.";
       scores[winner]++;
       nextPlayer[0] = winner;
     }
     else{//set nextPlayer to next noneliminated player
       nextPlayer[0] = (nextPlayer[0]+1)%num; 
-      while(eliminated(nextPlayer[0])) nextPlayer[0] = (nextPlayer[0]+1)%num; 
+      while((alive[0]>>nextPlayer[0]&1)==0) nextPlayer[0] = (nextPlayer[0]+1)%num; 
     }
     return ret;
   }
 
+  //joins an outcome onto a description, either of which is null when descriptions are off
+  private static String append(String ret, String outcome){
+    return ret==null?null:ret+outcome;
+  }
+
+  //the action helpers below apply their effects and return a description of them, or null if descriptions are off
   private String guardAction(int a, int t, Card guess){
     if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
     else if(guess==hand[t]){//correct guess, target eliminated
       discards[t][discardCount[t]++] = hand[t];
-      hand[t]=null;
-      for(int p = 0; p<num; p++)known[p][t]=true;
-      return "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
+      eliminate(t);
+      return describe?"\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round":null;
     } 
-    else return "\nPlayer "+name(t)+" does not have the "+guess;
+    else return describe?"\nPlayer "+name(t)+" does not have the "+guess:null;
   }
 
   private String priestAction(int a, int t){
     if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else known[a][t]=true;
-    return "\nPlayer "+name(a)+" sees player "+name(t)+"'s card.";
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
+    else known[t]|=1<<a;
+    return describe?"\nPlayer "+name(a)+" sees player "+name(t)+"'s card.":null;
   }
 
   private String baronAction(int a, int t){
     if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;//no effect action
     int elim = -1;
     if(hand[a].value()>hand[t].value()) elim = t;
     else if(hand[a].value()<hand[t].value()) elim = a;
     if(elim!=-1){
       discards[elim][discardCount[elim]++] = hand[elim];
-      hand[elim]=null;
-      for(int p = 0; p<num; p++) known[p][elim]=true;
-      return "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
+      eliminate(elim);
+      return describe?"\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated":null;
     }
-    known[a][t]=true;
-    known[t][a]=true;
-    return "\n Both players hold the same card, and neither is eliminated.";
+    known[t]|=1<<a;
+    known[a]|=1<<t;
+    return describe?"\n Both players hold the same card, and neither is eliminated.":null;
   }
 
   //handmaid action requires no update
@@ -283,40 +329,40 @@ public class State implements Cloneable{
     Card discard = hand[t];
     discards[t][discardCount[t]++] = discard;
     if(discard==Card.PRINCESS){
-      hand[t]=null;
-      for(int p = 0; p<num; p++) known[p][t]=true;
-      return "\nPlayer "+name(t)+" discarded the Princess and is eliminated.";
+      eliminate(t);
+      return describe?"\nPlayer "+name(t)+" discarded the Princess and is eliminated.":null;
     }
     hand[t]=deck[top[0]++];
-    for(int p =0; p<num;p++) 
-      if(p!=t)known[p][t]=false;
-    return "\nPlayer "+name(t)+" discards the "+discard+".";
+    known[t]=1<<t;
+    return describe?"\nPlayer "+name(t)+" discards the "+discard+".":null;
   }
 
   private String kingAction(int a, int t){
     if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";
-    known[a][t]=true;
-    known[t][a]=true;
-    for(int p =0; p<num;p++){ 
-      if(p!=t && p!=a){
-        boolean tmp = known[p][t];
-        known[p][t] = known[p][a];
-        known[p][a] = tmp;
-      }
-    }
+      return describe?"\nPlayer "+name(t)+" is protected by the Handmaid.":null;
+    int both = 1<<a|1<<t;//whoever knew a card follows it, and the two players see each other's
+    int knewA = known[a];
+    known[a] = known[t]|both;
+    known[t] = knewA|both;
     Card tmp = hand[a];
     hand[a] = hand[t];
     hand[t] = tmp;
-    return "\nPlayer "+name(a)+" and player "+name(t)+" swap cards.";
+    return describe?"\nPlayer "+name(a)+" and player "+name(t)+" swap cards.":null;
   }
 
   //countess action not required
+
+  //removes a player from the round, revealing their card to everyone
+  private void eliminate(int p){
+    hand[p]=null;
+    alive[0]&=~(1<<p);
+    known[p]=(1<<num)-1;
+  }
   
   private String princessAction(int a){
     discards[a][discardCount[a]++] = hand[a];
-    hand[a]=null;
-    for(int p = 0; p< num; p++) known[p][a]=true;
+    eliminate(a);
+    if(!describe) return null;
     String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
     outcome += "\n Player "+name(a)+" was also holding the "+discards[a][discardCount[a]-1]+".";
     return outcome;
@@ -345,6 +391,26 @@ public class State implements Cloneable{
     };
   }
 
+  /**
+   * returns the number of cards in a player's discard pile.
+   * @param player the index of the player whos discard pile is sought.
+   * @return the number of cards the player has discarded this round
+   * @throws ArrayIndexOutOfBoundsException if the player is out of range.
+   * **/
+  public int discardCount(int player){return discardCount[player];}
+
+  /**
+   * returns a card from a player's discard pile, without the iterator getDiscards allocates.
+   * @param player the index of the player whos discard pile is sought.
+   * @param index the position in the pile, 0 for the earliest discard
+   * @return the card discarded at that position
+   * @throws ArrayIndexOutOfBoundsException if the player or index is out of range.
+   * **/
+  public Card getDiscard(int player, int index){
+    if(index>=discardCount[player]) throw new ArrayIndexOutOfBoundsException(index);
+    return discards[player][index];
+  }
+
   /**
    * get the card of the specified player, if known.
    * @param playerIndex the player for which we seek the card
@@ -352,7 +418,20 @@ public class State implements Cloneable{
    * @throws ArrayIndexoutOfBoundsException if the playerIndex is out of range.
    * **/
   public Card getCard(int playerIndex){
-    if(player==-1 || known[player][playerIndex]) return hand[playerIndex];
+    if(player==-1 || (known[playerIndex]>>player&1)!=0) return hand[playerIndex];
+    else return null;
+  }
+
+  /**
+   * get the card of the specified player, if another player knows it,
+   * without building that player's view with playerState.
+   * @param viewer the player whose knowledge is used
+   * @param playerIndex the player for which we seek the card
+   * @return the card the player currently holds, or null, if the viewer does not know it or this state cannot tell
+   * @throws ArrayIndexoutOfBoundsException if either index is out of range.
+   * **/
+  public Card getCard(int viewer, int playerIndex){
+    if((player==-1 || player==viewer) && (known[playerIndex]>>viewer&1)!=0) return hand[playerIndex];
     else return null;
   }
 
@@ -363,7 +442,8 @@ public class State implements Cloneable{
    * @throws ArrayIndexoutOfBoundsException if the playerIndex is out of range.
    * **/
   public boolean eliminated(int player){
-    return hand[player]==null;
+    if(player<0 || player>=num) throw new ArrayIndexOutOfBoundsException(player);
+    return (alive[0]>>player&1)==0;
   }
 
   /**
@@ -388,7 +468,7 @@ public class State implements Cloneable{
    * **/
   public boolean handmaid(int player){
     if(player<0 || player >=num) return false;
-    return handmaid[player];
+    return (handmaid[0]>>player&1)!=0;
   }
 
   /**
@@ -398,10 +478,26 @@ public class State implements Cloneable{
    * @throws ArrayIndexoutOfBoundsException if the playerIndex is out of range.
    * **/
   public boolean allHandmaid(int player){
-    boolean noAction = true;
-    for(int i = 0; i<num; i++)
-      noAction = noAction && (eliminated(i) || handmaid[i] || i==player); 
-    return noAction;
+    return targetable(player)==0;
+  }
+
+  /**
+   * gives the players still in the round
+   * @return a bitmask with bit p set if and only if player p has not been eliminated
+   * **/
+  public int remaining(){
+    return alive[0];
+  }
+
+  /**
+   * gives the players the specified player's card may affect: every other player still in the round and not protected by the handmaid.
+   * When this is empty, targeted cards other than the Prince may name any other player still in the round, to no effect,
+   * and the Prince must target the player themselves.
+   * @param player the player who would be playing a card
+   * @return a bitmask with bit p set if and only if player p may be affected
+   * **/
+  public int targetable(int player){
+    return alive[0]&~handmaid[0]&~(1<<player);
   }
 
   private String name(int playerIndex){
@@ -412,7 +508,15 @@ public class State implements Cloneable{
    * @return the number of cards not in players hands or discarded.
    * **/
   public int deckSize(){
-    return 16-top[0];
+    return cards-top[0];
+  }
+
+  /**
+   * gives the ruleset the game is played with
+   * @return the deck and scoring in play
+   * **/
+  public Ruleset ruleset(){
+    return rules;
   }
 
   /**
@@ -421,9 +525,7 @@ public class State implements Cloneable{
    * @return an array of all cards not in the discard piles
    ***/
   public Card[] unseenCards(){
-    int alive = 0;
-    for(int p = 0; p<num; p++)
-      if(!eliminated(p))alive++;
+    int alive = Integer.bitCount(this.alive[0]);
     Card[] rem = new Card[deckSize()+alive];
     int aCount = 0;
     for(int p = 0; p<num; p++)
@@ -439,10 +541,8 @@ public class State implements Cloneable{
    * @return true if and only if the round is over
    * **/
   public boolean roundOver(){
-    int remaining = 0;
-    for(int i=0; i<num; i++) 
-      if(!eliminated(i)) remaining++;
-    return remaining==1 || deckSize()<2;
+    int al = alive[0];
+    return (al&al-1)==0 || deckSize()<2;
   }
 
   /**helper method to determine the winner of the round.
@@ -491,7 +591,6 @@ public class State implements Cloneable{
    * @return the index of the winning player, or -1 if the game is not yet over.
    * **/
   public int gameWinner(){
-    int threshold = num==4?4:num==3?5:num==2?7:0;//sets the required threshhold for different numbers of players.
     for(int p = 0; p<num; p++)
       if(scores[p]==threshold)return p;
     return -1;
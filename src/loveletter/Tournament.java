@@ -0,0 +1,146 @@
+package loveletter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Plays a series of seeded games between one lineup of agents on several threads.
+ * Each worker builds its own lineup and engine once and plays every game it takes with them,
+ * so the agents' expensive structures, such as search trees, belief tables and random number
+ * generators, are built once per thread and reset through Agent.newGame and Agent.newRound
+ * rather than rebuilt for every game. A game that fails is abandoned and the worker builds a
+ * fresh lineup, since the failure may have left the agents mid update. Workers take games from
+ * a shared counter and game g is dealt from seed firstSeed+g, so the deals do not depend on the
+ * number of threads. Run with
+ * <pre>java loveletter.Tournament [games] [threads] [lineup] [ruleset]</pre>
+ * where the lineup is a comma separated list of agent classes, one per seat, in the agents
+ * package unless qualified, such as GodV1,RandomAgent,RandomAgent,RandomAgent.
+ * */
+public class Tournament{
+
+  private final Supplier<Agent[]> lineup;
+  private final Ruleset rules;
+
+  /**
+   * Creates a tournament.
+   * @param lineup makes a new set of agents, one per seat, called once for each worker and after each failed game
+   * @param rules the deck and scoring to play with
+   * */
+  public Tournament(Supplier<Agent[]> lineup, Ruleset rules){
+    this.lineup = lineup;
+    this.rules = rules;
+  }
+
+  /**
+   * The results of a tournament, by seat.
+   * */
+  public static final class Standings{
+    /**Games won by each seat**/
+    public final long[] wins;
+    /**Round tokens won by each seat**/
+    public final long[] tokens;
+    /**Games abandoned because an agent failed**/
+    public int failed;
+
+    Standings(int seats){
+      wins = new long[seats];
+      tokens = new long[seats];
+    }
+
+    //adds another worker's results to these
+    synchronized void add(Standings other){
+      for(int p = 0; p<wins.length; p++){
+        wins[p] += other.wins[p];
+        tokens[p] += other.tokens[p];
+      }
+      failed += other.failed;
+    }
+  }
+
+  /**
+   * Plays the games, returning when every worker has finished.
+   * @param firstSeed the seed of the first game
+   * @param games the number of games to play
+   * @param threads the number of threads playing games
+   * @return the wins and tokens of each seat
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * */
+  public Standings play(long firstSeed, int games, int threads) throws InterruptedException{
+    Agent[] first = lineup.get();//built here, so a lineup that cannot be made fails before any thread starts
+    int seats = first.length;
+    Standings total = new Standings(seats);
+    AtomicInteger next = new AtomicInteger();
+    Thread[] pool = new Thread[threads];
+    for(int w = 0; w<threads; w++){
+      boolean firstWorker = w==0;
+      pool[w] = new Thread(() -> {
+        Agent[] agents = firstWorker?first:lineup.get();
+        LoveLetter env = new LoveLetter(firstSeed, null, rules);
+        Standings mine = new Standings(seats);
+        int g;
+        while((g = next.getAndIncrement())<games){
+          env.setSeed(firstSeed+g);
+          int[] scores;
+          try{
+            scores = env.playGame(agents);
+          }catch(RuntimeException|StackOverflowError e){//a broken agent should cost one game, not the tournament
+            if(Log.warn()) Log.println("Game "+g+" abandoned: "+e);
+            scores = null;
+          }
+          if(scores==null){
+            mine.failed++;
+            agents = lineup.get();//the failure may have left the agents' state half updated
+            continue;
+          }
+          int winner = 0;
+          for(int p = 0; p<seats; p++){
+            mine.tokens[p] += scores[p];
+            if(scores[p]>scores[winner]) winner = p;
+          }
+          mine.wins[winner]++;
+        }
+        total.add(mine);
+      }, "tournament-"+w);
+      pool[w].start();
+    }
+    for(Thread t: pool) t.join();
+    return total;
+  }
+
+  //makes an agent from its class name, in the agents package unless qualified
+  private static Agent newAgent(String name){
+    String qualified = name.contains(".")?name:"agents."+name;
+    try{
+      return (Agent)Class.forName(qualified).getDeclaredConstructor().newInstance();
+    }catch(ReflectiveOperationException|ClassCastException e){
+      throw new IllegalArgumentException("Cannot create agent "+qualified, e);
+    }
+  }
+
+  /**
+   * Plays a tournament and reports each seat's share of the games and tokens.
+   * @param args the number of games, threads, the lineup and the ruleset
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * */
+  public static void main(String[] args) throws InterruptedException{
+    int games = args.length>0?Integer.parseInt(args[0]):1000;
+    int threads = args.length>1?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+    String[] names = (args.length>2?args[2]:"GodV1,RandomAgent,RandomAgent,RandomAgent").split(",");
+    Ruleset rules = args.length>3?Ruleset.forName(args[3]):Ruleset.CLASSIC;
+    Log.setLevel(Log.Level.QUIET);
+    Supplier<Agent[]> lineup = () -> {
+      Agent[] agents = new Agent[names.length];
+      for(int p = 0; p<names.length; p++) agents[p] = newAgent(names[p].trim());
+      return agents;
+    };
+    long start = System.nanoTime();
+    Standings s = new Tournament(lineup, rules).play(0, games, threads);
+    double seconds = (System.nanoTime()-start)/1e9;
+    long allTokens = 0;
+    for(long t: s.tokens) allTokens += t;
+    System.out.printf("%d games in %.1fs on %d threads, %d abandoned%n", games, seconds, threads, s.failed);
+    for(int p = 0; p<names.length; p++)
+      System.out.printf("seat %d %-14s wins %.4f tokens %.4f%n", p, names[p].trim(),
+        (double)s.wins[p]/Math.max(1, games-s.failed), (double)s.tokens[p]/Math.max(1, allTokens));
+  }
+}
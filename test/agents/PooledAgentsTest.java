@@ -0,0 +1,57 @@
+package agents;
+import loveletter.*;
+
+import java.util.Random;
+
+/**
+ * Checks that a GodV2 kept for a whole game carries no belief from one round into the next.
+ * One agent plays two rounds against random players, searching every move it cannot answer
+ * from its book, and at the start of each round every agent in its pools must count the
+ * whole deck as unseen again. Run with
+ * <pre>java agents.PooledAgentsTest</pre>
+ * after compiling it alongside the sources; it exits with status 1 if a count is wrong.
+ * */
+public class PooledAgentsTest{
+
+  public static void main(String[] args) throws IllegalActionException{
+    Log.setLevel(Log.Level.QUIET);
+    Ruleset rules = Ruleset.CLASSIC;
+    GodV2 god = new GodV2(4, 2000, 0.3, 0.0);
+    Agent[] agents = {god, new RandomAgent(1), new RandomAgent(2), new RandomAgent(3)};
+    State game = new State(new Random(7), agents, rules);
+    State[] views = new State[agents.length];
+    for(int p = 0; p<agents.length; p++){
+      views[p] = game.playerState(p);
+      agents[p].newGame(views[p]);
+    }
+    boolean moved = false;
+    for(int round = 0; round<2; round++){
+      for(int p = 0; p<agents.length; p++) agents[p].newRound(views[p]);
+      if(!atDeckCounts(god, rules)) fail("round "+round+" started with counts left from the last round");
+      while(!game.roundOver()){
+        Card card = game.drawCard();
+        Action act = agents[game.nextPlayer()].playCard(card);
+        game.update(act, card);
+        for(int p = 0; p<agents.length; p++) agents[p].see(act, views[p]);
+      }
+      moved |= !atDeckCounts(god, rules);
+      game.newRound();
+    }
+    for(int p = 0; p<agents.length; p++) agents[p].newRound(views[p]);
+    if(!atDeckCounts(god, rules)) fail("the third round started with counts left from the second");
+    System.out.println("pooled agents reset to the deck counts"+(moved?"":", though no search moved them"));
+  }
+
+  //true if every pooled agent counts every card of the deck as unseen
+  private static boolean atDeckCounts(GodV2 god, Ruleset rules){
+    for(PseudoAgent a: god.pooledAgents())
+      for(int v = 1; v<=8; v++)
+        if(a.unseen(v)!=rules.count(v)) return false;
+    return true;
+  }
+
+  private static void fail(String message){
+    System.out.println("FAILED: "+message);
+    System.exit(1);
+  }
+}